@@ -0,0 +1,72 @@
+package io.github.stack.commons;
+
+import com.fasterxml.jackson.databind.util.ISO8601DateFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.ParseException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses and formats {@link Date}s with {@link Iso8601} and with the shared {@link ISO8601DateFormat} that it
+ * replaced. Every call uses a different second, so the formatted second cache only helps when it should.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class Iso8601Benchmark {
+
+    private static final String ISO8601_DATE_FORMAT = "ISO8601_DATE_FORMAT";
+    private static final ISO8601DateFormat SHARED_DATE_FORMAT = new ISO8601DateFormat();
+
+    @Param({ISO8601_DATE_FORMAT, "ISO8601"})
+    public String implementation;
+
+    private long[] times;
+    private String[] texts;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(0);
+        times = new long[1024];
+        texts = new String[times.length];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = 1487635200000L + random.nextInt(365 * 86400) * 1000L;
+            texts[i] = Iso8601.format(times[i]);
+        }
+    }
+
+    @Benchmark
+    public String format() {
+        final long time = times[next++ & 1023];
+        if (ISO8601_DATE_FORMAT.equals(implementation)) {
+            return SHARED_DATE_FORMAT.format(new java.util.Date(time));
+        }
+        return Iso8601.format(time);
+    }
+
+    @Benchmark
+    public long parse() throws ParseException {
+        final String text = texts[next++ & 1023];
+        if (ISO8601_DATE_FORMAT.equals(implementation)) {
+            return SHARED_DATE_FORMAT.parse(text).getTime();
+        }
+        return Iso8601.parse(text);
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.stack.commons;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A clock that is updated by a background ticker, so reading it is a volatile read instead of a call to the system
+ * clock. Readings lag the system clock by up to one tick; use it where that is acceptable, such as TTL checks:
+ * <pre>
+ * final long now = clock.millis();
+ * records.removeIf(record -&gt; Date.isOlderThan(record.getCreated(), 1, TimeUnit.HOURS, now));
+ * </pre>
+ */
+public final class CoarseClock implements AutoCloseable {
+
+    private final ScheduledExecutorService ticker;
+
+    private volatile long millis;
+
+    public CoarseClock(final long tick, final TimeUnit unit) {
+        Preconditions.checkArgument(tick > 0, "tick must be positive");
+        this.millis = System.currentTimeMillis();
+        this.ticker = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat(CoarseClock.class.getSimpleName() + "-%d")
+                .setDaemon(true)
+                .build());
+        this.ticker.scheduleAtFixedRate(() -> millis = System.currentTimeMillis(), tick, tick, unit);
+    }
+
+    /**
+     * @return the current time in milliseconds as of the last tick
+     */
+    public long millis() {
+        return millis;
+    }
+
+    /**
+     * @return the current time as of the last tick
+     */
+    public Date now() {
+        return new Date(millis);
+    }
+
+    /**
+     * Stops the ticker; the clock keeps returning the last time it was updated to.
+     */
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+}
@@ -1,7 +1,5 @@
 package io.github.stack.commons;
 
-import com.fasterxml.jackson.databind.util.ISO8601DateFormat;
-
 import java.text.ParseException;
 import java.time.Duration;
 import java.time.Instant;
@@ -10,17 +8,19 @@ import java.util.concurrent.TimeUnit;
 /**
  * Allows you to actually use Date class with swagger. By having a string constructor, we are able to use
  * correctly pass in a formatted string into the Date object.
+ * <p>
+ * The static methods do the same arithmetic on epoch milliseconds without creating Date objects, for hot paths
+ * such as expiry checks over many records; pair them with a {@link CoarseClock} to avoid reading the system clock
+ * on every call.
  */
 public class Date extends java.util.Date {
 
-    private static final ISO8601DateFormat ISO_8601_DATE_FORMAT = new ISO8601DateFormat();
-
     public Date() {
-        super(new java.util.Date().getTime());
+        super(System.currentTimeMillis());
     }
 
     public Date(final String source) throws ParseException {
-        super(ISO_8601_DATE_FORMAT.parse(source).getTime());
+        super(Iso8601.parse(source));
     }
 
     public Date(final Long time) {
@@ -44,10 +44,20 @@ public class Date extends java.util.Date {
      * @return
      */
     public Date toNearest(final TimeUnit unit) {
-        final long time = getTime();
+        return new Date(toNearest(getTime(), unit));
+    }
+
+    /**
+     * Rounds the time in milliseconds to the nearest unit.
+     *
+     * @param time
+     * @param unit
+     * @return
+     */
+    public static long toNearest(final long time, final TimeUnit unit) {
         final long rounded = unit.toMillis(unit.convert(time, TimeUnit.MILLISECONDS));
         final long remainder = unit.toMillis(unit.convert(time - rounded + TimeUnit.MILLISECONDS.convert(1, unit) / 2, TimeUnit.MILLISECONDS));
-        return new Date(rounded + remainder);
+        return rounded + remainder;
     }
 
     /**
@@ -64,7 +74,20 @@ public class Date extends java.util.Date {
      * @return
      */
     public boolean isOlderThan(final long time, final TimeUnit unit) {
-        return add(time, unit).getTime() <= now().getTime();
+        return isOlderThan(getTime(), time, unit, System.currentTimeMillis());
+    }
+
+    /**
+     * Whether the time in milliseconds is at least <b>age</b> <b>unit</b> before <b>now</b>.
+     *
+     * @param time
+     * @param age
+     * @param unit
+     * @param now  the current time in milliseconds, such as {@link CoarseClock#millis()}
+     * @return
+     */
+    public static boolean isOlderThan(final long time, final long age, final TimeUnit unit, final long now) {
+        return time + unit.toMillis(age) <= now;
     }
 
     /**
@@ -74,8 +97,22 @@ public class Date extends java.util.Date {
      * @return
      */
     public boolean isYoungerThan(final long time, final TimeUnit unit) {
-        return add(time, unit).getTime() > now().getTime();
+        return isYoungerThan(getTime(), time, unit, System.currentTimeMillis());
     }
+
+    /**
+     * Whether the time in milliseconds is less than <b>age</b> <b>unit</b> before <b>now</b>.
+     *
+     * @param time
+     * @param age
+     * @param unit
+     * @param now  the current time in milliseconds, such as {@link CoarseClock#millis()}
+     * @return
+     */
+    public static boolean isYoungerThan(final long time, final long age, final TimeUnit unit, final long now) {
+        return time + unit.toMillis(age) > now;
+    }
+
     /**
      *
      * @param duration
@@ -92,7 +129,19 @@ public class Date extends java.util.Date {
      * @return
      */
     public Date add(final long time, final TimeUnit unit) {
-        return new Date(getTime() + unit.toMillis(time));
+        return new Date(add(getTime(), time, unit));
+    }
+
+    /**
+     * Returns the time in milliseconds that is <b>amount</b> <b>unit</b> after <b>time</b>.
+     *
+     * @param time
+     * @param amount
+     * @param unit
+     * @return
+     */
+    public static long add(final long time, final long amount, final TimeUnit unit) {
+        return time + unit.toMillis(amount);
     }
 
     /**
@@ -121,7 +170,19 @@ public class Date extends java.util.Date {
      * @return
      */
     public Date subtract(final long time, final TimeUnit unit) {
-        return new Date(getTime() - unit.toMillis(time));
+        return new Date(subtract(getTime(), time, unit));
+    }
+
+    /**
+     * Returns the time in milliseconds that is <b>amount</b> <b>unit</b> before <b>time</b>.
+     *
+     * @param time
+     * @param amount
+     * @param unit
+     * @return
+     */
+    public static long subtract(final long time, final long amount, final TimeUnit unit) {
+        return time - unit.toMillis(amount);
     }
 
     /**
@@ -153,7 +214,7 @@ public class Date extends java.util.Date {
 
     @Override
     public String toString() {
-        return ISO_8601_DATE_FORMAT.format(this);
+        return Iso8601.format(getTime());
     }
 
     public Duration toDuration() {
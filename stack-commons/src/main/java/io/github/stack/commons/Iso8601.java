@@ -0,0 +1,159 @@
+package io.github.stack.commons;
+
+import com.fasterxml.jackson.databind.util.ISO8601Utils;
+
+import java.text.ParseException;
+import java.text.ParsePosition;
+
+/**
+ * Thread-safe ISO-8601 parsing and formatting for {@link Date}, in UTC with second precision.
+ * <p>
+ * The common {@code yyyy-MM-ddTHH:mm:ssZ} and {@code yyyy-MM-ddTHH:mm:ss.SSSZ} shapes are parsed without
+ * allocating; every other shape, such as time zone offsets, goes through {@link ISO8601Utils}. The last formatted
+ * second is cached, since consecutive dates usually share it.
+ * <p>
+ * The fast path computes proleptic Gregorian dates, so it only handles years from {@value #FIRST_GREGORIAN_YEAR};
+ * earlier dates go through {@link ISO8601Utils}, which switches to the Julian calendar before 1582-10-15.
+ */
+final class Iso8601 {
+
+    /**
+     * The first full year of the Gregorian calendar, as used by {@link java.util.GregorianCalendar}.
+     */
+    static final int FIRST_GREGORIAN_YEAR = 1583;
+
+    private static volatile FormattedSecond lastFormatted;
+
+    private Iso8601() {
+    }
+
+    static long parse(final String source) throws ParseException {
+        final long time = parseUtc(source);
+        if (time != Long.MIN_VALUE) {
+            return time;
+        }
+        return ISO8601Utils.parse(source, new ParsePosition(0)).getTime();
+    }
+
+    static String format(final long time) {
+        final long second = Math.floorDiv(time, 1000);
+        final FormattedSecond formatted = lastFormatted;
+        if (formatted != null && formatted.second == second) {
+            return formatted.text;
+        }
+
+        final String text = formatUtc(second);
+        lastFormatted = new FormattedSecond(second, text);
+        return text;
+    }
+
+    /**
+     * @return the time, or Long.MIN_VALUE if the source is not in one of the common shapes
+     */
+    private static long parseUtc(final String source) {
+        final int length = source.length();
+        if (length != 20 && length != 24
+                || source.charAt(4) != '-' || source.charAt(7) != '-' || source.charAt(10) != 'T'
+                || source.charAt(13) != ':' || source.charAt(16) != ':' || source.charAt(length - 1) != 'Z') {
+            return Long.MIN_VALUE;
+        }
+
+        final int year = digits(source, 0, 4);
+        final int month = digits(source, 5, 2);
+        final int day = digits(source, 8, 2);
+        final int hour = digits(source, 11, 2);
+        final int minute = digits(source, 14, 2);
+        final int second = digits(source, 17, 2);
+        final int millis = length == 24 && source.charAt(19) == '.' ? digits(source, 20, 3) : length == 20 ? 0 : -1;
+        if (year < FIRST_GREGORIAN_YEAR || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || millis < 0) {
+            return Long.MIN_VALUE;
+        }
+
+        final long seconds = daysFromCivil(year, month, day) * 86400L + hour * 3600 + minute * 60 + second;
+        return seconds * 1000 + millis;
+    }
+
+    private static String formatUtc(final long second) {
+        final long days = Math.floorDiv(second, 86400);
+        final int secondOfDay = (int) Math.floorMod(second, 86400);
+
+        // civil from days, see http://howardhinnant.github.io/date_algorithms.html
+        final long shifted = days + 719468;
+        final long era = Math.floorDiv(shifted, 146097);
+        final long dayOfEra = shifted - era * 146097;
+        final long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final long monthIndex = (5 * dayOfYear + 2) / 153;
+        final int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        final int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        final long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < FIRST_GREGORIAN_YEAR || year > 9999) {
+            return ISO8601Utils.format(new java.util.Date(second * 1000));
+        }
+
+        final char[] text = new char[20];
+        put(text, 0, (int) year, 4);
+        text[4] = '-';
+        put(text, 5, month, 2);
+        text[7] = '-';
+        put(text, 8, day, 2);
+        text[10] = 'T';
+        put(text, 11, secondOfDay / 3600, 2);
+        text[13] = ':';
+        put(text, 14, secondOfDay / 60 % 60, 2);
+        text[16] = ':';
+        put(text, 17, secondOfDay % 60, 2);
+        text[19] = 'Z';
+        return new String(text);
+    }
+
+    private static long daysFromCivil(final int year, final int month, final int day) {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static int daysInMonth(final int year, final int month) {
+        if (month == 2) {
+            return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * @return the value of the digits, or -1 if one of the characters is not a digit
+     */
+    private static int digits(final String source, final int offset, final int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            final int digit = source.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static void put(final char[] text, final int offset, int value, final int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            text[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static final class FormattedSecond {
+
+        private final long second;
+        private final String text;
+
+        private FormattedSecond(final long second, final String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
+}
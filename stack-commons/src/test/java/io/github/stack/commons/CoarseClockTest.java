@@ -0,0 +1,57 @@
+package io.github.stack.commons;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CoarseClockTest {
+
+    @Test(timeout = 5000)
+    public void testTicks() throws InterruptedException {
+        try (CoarseClock clock = new CoarseClock(10, TimeUnit.MILLISECONDS)) {
+            final long start = clock.millis();
+            assertTrue(Math.abs(start - System.currentTimeMillis()) < 1000);
+            while (clock.millis() == start) {
+                Thread.sleep(5);
+            }
+            assertTrue(clock.millis() > start);
+            assertEquals(clock.millis(), clock.now().getTime(), 1000);
+        }
+    }
+
+    @Test
+    public void testStopsOnClose() throws InterruptedException {
+        final CoarseClock clock = new CoarseClock(10, TimeUnit.MILLISECONDS);
+        clock.close();
+        Thread.sleep(50);
+
+        final long stopped = clock.millis();
+        Thread.sleep(50);
+        assertEquals(stopped, clock.millis());
+        assertFalse(hasTicker());
+    }
+
+    @Test
+    public void testRejectsNonPositiveTick() throws InterruptedException {
+        for (final long tick : new long[]{0, -1}) {
+            try {
+                new CoarseClock(tick, TimeUnit.MILLISECONDS);
+                fail("tick " + tick + " accepted");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        Thread.sleep(50);
+        assertFalse(hasTicker());
+    }
+
+    private static boolean hasTicker() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> thread.getName().startsWith(CoarseClock.class.getSimpleName() + "-"));
+    }
+}
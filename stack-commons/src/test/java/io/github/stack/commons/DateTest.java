@@ -0,0 +1,46 @@
+package io.github.stack.commons;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DateTest {
+
+    private static final long TIME = 1487635200000L;
+
+    @Test
+    public void testStaticArithmeticMatchesInstanceMethods() {
+        final Date date = new Date(TIME);
+        assertEquals(date.add(90, TimeUnit.MINUTES).getTime(), Date.add(TIME, 90, TimeUnit.MINUTES));
+        assertEquals(date.subtract(3, TimeUnit.DAYS).getTime(), Date.subtract(TIME, 3, TimeUnit.DAYS));
+        assertEquals(TIME + 5400000, Date.add(TIME, 90, TimeUnit.MINUTES));
+        assertEquals(TIME - 259200000, Date.subtract(TIME, 3, TimeUnit.DAYS));
+    }
+
+    @Test
+    public void testToNearest() throws ParseException {
+        assertEquals(new Date("2017-02-21T00:00:00Z").getTime(),
+                Date.toNearest(new Date("2017-02-21T00:29:59Z").getTime(), TimeUnit.HOURS));
+        assertEquals(new Date("2017-02-21T01:00:00Z").getTime(),
+                Date.toNearest(new Date("2017-02-21T00:30:00Z").getTime(), TimeUnit.HOURS));
+        assertEquals(new Date("2017-02-21T00:00:01Z"), new Date("2017-02-21T00:00:00.600Z").toNearest(TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAge() {
+        final long now = TIME + TimeUnit.HOURS.toMillis(1);
+        assertTrue(Date.isOlderThan(TIME, 1, TimeUnit.HOURS, now));
+        assertFalse(Date.isYoungerThan(TIME, 1, TimeUnit.HOURS, now));
+        assertFalse(Date.isOlderThan(TIME, 61, TimeUnit.MINUTES, now));
+        assertTrue(Date.isYoungerThan(TIME, 61, TimeUnit.MINUTES, now));
+
+        final Date recent = Date.now();
+        assertTrue(recent.isYoungerThan(1, TimeUnit.HOURS));
+        assertFalse(recent.isOlderThan(1, TimeUnit.HOURS));
+    }
+}
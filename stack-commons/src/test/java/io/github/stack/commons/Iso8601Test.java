@@ -0,0 +1,61 @@
+package io.github.stack.commons;
+
+import com.fasterxml.jackson.databind.util.ISO8601Utils;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.ParsePosition;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class Iso8601Test {
+
+    @Test
+    public void testMatchesISO8601Utils() throws ParseException {
+        final Random random = new Random(0);
+        final long min = ISO8601Utils.parse("0001-01-01T00:00:00Z", new ParsePosition(0)).getTime();
+        final long max = ISO8601Utils.parse("9999-12-31T23:59:59Z", new ParsePosition(0)).getTime();
+        for (int i = 0; i < 100000; i++) {
+            final long time = min + (long) (random.nextDouble() * (max - min)) / 1000 * 1000;
+            assertRoundTrip(time);
+        }
+    }
+
+    @Test
+    public void testJulianDates() throws ParseException {
+        assertParse("1582-10-04T23:59:59Z");
+        assertParse("1582-10-15T00:00:00Z");
+        assertParse("1582-12-31T23:59:59.999Z");
+        assertParse("1583-01-01T00:00:00Z");
+        assertParse("1500-02-29T12:00:00Z");
+        assertParse("0100-03-01T00:00:00Z");
+
+        assertEquals("1582-10-04T23:59:59Z", Iso8601.format(Iso8601.parse("1582-10-04T23:59:59Z")));
+        assertEquals("1582-10-15T00:00:00Z", Iso8601.format(Iso8601.parse("1582-10-15T00:00:00Z")));
+        assertEquals(Iso8601.parse("1582-10-15T00:00:00Z") - 86400000, Iso8601.parse("1582-10-04T00:00:00Z"));
+    }
+
+    @Test
+    public void testNegativeYears() throws ParseException {
+        final long time = ISO8601Utils.parse("0001-01-01T00:00:00Z", new ParsePosition(0)).getTime() - 86400000L * 366 * 10;
+        final String text = ISO8601Utils.format(new java.util.Date(time));
+        assertEquals(text, Iso8601.format(time));
+        assertParse(text);
+    }
+
+    @Test(expected = ParseException.class)
+    public void testSignedYearIsRejectedLikeISO8601Utils() throws ParseException {
+        Iso8601.parse("-010-01-01T00:00:00Z");
+    }
+
+    private static void assertRoundTrip(final long time) throws ParseException {
+        final String text = ISO8601Utils.format(new java.util.Date(time));
+        assertEquals(text, Iso8601.format(time));
+        assertEquals(time, Iso8601.parse(text));
+    }
+
+    private static void assertParse(final String text) throws ParseException {
+        assertEquals(text, ISO8601Utils.parse(text, new ParsePosition(0)).getTime(), Iso8601.parse(text));
+    }
+}
@@ -0,0 +1,117 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes and decodes a typical object with every {@link Codec}. {@code STRING} is the JSON path through
+ * {@link String} that the codecs replaced. The encoded size of each format is reported as the secondary
+ * {@code encode:encodedBytes} result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    private static final String STRING = "STRING";
+
+    @Param({STRING, "JSON", "SMILE", "CBOR"})
+    public String format;
+
+    private ObjectMapper objectMapper;
+    private ObjectWriter writer;
+    private ObjectReader reader;
+    private Document document;
+    private byte[] encoded;
+
+    public static class Document {
+
+        public String name;
+        public String email;
+        public int count;
+        public long created;
+        public double score;
+        public boolean active;
+        public String status;
+        public String region;
+        public String owner;
+        public List<String> tags;
+        public Map<String, Long> counters;
+    }
+
+    /**
+     * Holds the size of the last encoded document, which JMH reports next to the timings.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class EncodedSize {
+
+        public long encodedBytes;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = STRING.equals(format) ? new ObjectMapper() : Codec.valueOf(format).newObjectMapper();
+        writer = objectMapper.writerWithType(Document.class);
+        reader = objectMapper.reader(Document.class);
+
+        document = new Document();
+        document.name = "person-1234";
+        document.email = "person-1234@example.com";
+        document.count = 1234;
+        document.created = 1487635200000L;
+        document.score = 1851.5;
+        document.active = true;
+        document.status = "ACTIVE";
+        document.region = "us-west";
+        document.owner = "person-1";
+        document.tags = Arrays.asList("alpha", "beta", "gamma", "t1234");
+        document.counters = new LinkedHashMap<>();
+        for (int i = 0; i < 8; i++) {
+            document.counters.put("counter" + i, 1234L * i);
+        }
+
+        encoded = encode(new EncodedSize());
+    }
+
+    @Benchmark
+    public byte[] encode(final EncodedSize encodedSize) throws IOException {
+        final byte[] bytes = STRING.equals(format)
+                ? objectMapper.writeValueAsString(document).getBytes(StandardCharsets.UTF_8)
+                : writer.writeValueAsBytes(document);
+        encodedSize.encodedBytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Document decode() throws IOException {
+        if (STRING.equals(format)) {
+            return objectMapper.readValue(new String(encoded, StandardCharsets.UTF_8), Document.class);
+        }
+        return reader.readValue(encoded);
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.stack.guice;
+
+import com.google.inject.Binding;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Singleton;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bindings of an injector grouped by type, built in one pass over {@link Injector#getAllBindings()} so that
+ * {@code Stack} and its plugins do not each walk and reflect over every binding.
+ * Inject it, or get it with {@code injector.getInstance(BindingIndex.class)}; there is one per injector.
+ * Only the bindings that exist when the index is created are indexed.
+ */
+@Singleton
+public final class BindingIndex {
+    
+    private final Map<Class<?>, List<Binding<?>>> bindingsByType;
+    private final Map<Class<?>, List<Binding<?>>> bindingsBySupertype = new ConcurrentHashMap<>();
+    private final Map<Class<? extends Annotation>, Set<Class<?>>> typesByAnnotation = new ConcurrentHashMap<>();
+    
+    @Inject
+    BindingIndex(final Injector injector) {
+        final Map<Class<?>, List<Binding<?>>> bindings = new HashMap<>();
+        for (final Map.Entry<Key<?>, Binding<?>> entry : injector.getAllBindings().entrySet()) {
+            bindings.computeIfAbsent(entry.getKey().getTypeLiteral().getRawType(), type -> new ArrayList<>())
+                    .add(entry.getValue());
+        }
+        this.bindingsByType = bindings;
+    }
+    
+    /**
+     * @param type
+     * @return the bindings of the given type and its subtypes
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<Binding<? extends T>> getBindings(final Class<T> type) {
+        return (List<Binding<? extends T>>) (List<?>) bindingsBySupertype.computeIfAbsent(type, supertype -> {
+            final List<Binding<?>> bindings = new ArrayList<>();
+            bindingsByType.forEach((boundType, typeBindings) -> {
+                if (supertype.isAssignableFrom(boundType)) {
+                    bindings.addAll(typeBindings);
+                }
+            });
+            return Collections.unmodifiableList(bindings);
+        });
+    }
+    
+    /**
+     * @param annotation
+     * @return the bound types annotated with the given annotation, such as JAX-RS resources for {@code Path}
+     */
+    public Set<Class<?>> getTypesAnnotatedWith(final Class<? extends Annotation> annotation) {
+        return typesByAnnotation.computeIfAbsent(annotation, type -> {
+            final Set<Class<?>> types = new HashSet<>();
+            for (final Class<?> boundType : bindingsByType.keySet()) {
+                if (boundType.isAnnotationPresent(type)) {
+                    types.add(boundType);
+                }
+            }
+            return Collections.unmodifiableSet(types);
+        });
+    }
+}
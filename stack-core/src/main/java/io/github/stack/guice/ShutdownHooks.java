@@ -0,0 +1,58 @@
+package io.github.stack.guice;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the shutdown tasks of {@code Stack} and its plugins from a single JVM shutdown hook, phase by phase, so that
+ * requests stop before the scheduled services and the services stop before the resources they use are closed.
+ * Separate JVM shutdown hooks run concurrently in no particular order.
+ */
+public final class ShutdownHooks {
+    
+    private static final Logger log = LoggerFactory.getLogger(ShutdownHooks.class);
+    
+    /**
+     * Phases in the order they run; the tasks of one phase run in the order they were added.
+     */
+    public enum Phase {
+        SERVER,
+        SERVICES,
+        RESOURCES
+    }
+    
+    private static final Map<Phase, List<Runnable>> tasks = new EnumMap<>(Phase.class);
+    private static boolean registered = false;
+    
+    private ShutdownHooks() {
+    }
+    
+    public static synchronized void add(final Phase phase, final Runnable task) {
+        if (!registered) {
+            Runtime.getRuntime().addShutdownHook(new Thread(ShutdownHooks::run, ShutdownHooks.class.getSimpleName()));
+            registered = true;
+        }
+        tasks.computeIfAbsent(phase, key -> new ArrayList<>()).add(task);
+    }
+    
+    private static void run() {
+        final Map<Phase, List<Runnable>> phases;
+        synchronized (ShutdownHooks.class) {
+            phases = new EnumMap<>(tasks);
+        }
+        phases.forEach((phase, phaseTasks) -> {
+            for (final Runnable task : phaseTasks) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.warn("Failed to run a " + phase + " shutdown task", e);
+                }
+            }
+        });
+    }
+}
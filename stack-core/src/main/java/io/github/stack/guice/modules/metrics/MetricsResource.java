@@ -0,0 +1,107 @@
+package io.github.stack.guice.modules.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metered;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+@Api(value = "Metrics api", description = "Request, thread pool and application metrics")
+@Path("/api/stack/metrics/v1")
+public final class MetricsResource {
+    
+    private static final double MILLISECONDS_PER_NANOSECOND = 1.0 / TimeUnit.MILLISECONDS.toNanos(1);
+    
+    private final MetricRegistry metricRegistry;
+    
+    public MetricsResource(final MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+    
+    @ApiOperation(value = "get-metrics",
+            notes = "Returns all metrics; rates are per second and durations in milliseconds")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/get-metrics")
+    public Map<String, Object> getMetrics() {
+        final Map<String, Object> metrics = new TreeMap<>();
+        
+        final Map<String, Object> gauges = new TreeMap<>();
+        metricRegistry.getGauges().forEach((name, gauge) -> gauges.put(name, gauge.getValue()));
+        metrics.put("gauges", gauges);
+        
+        final Map<String, Object> counters = new TreeMap<>();
+        for (final Map.Entry<String, Counter> entry : metricRegistry.getCounters().entrySet()) {
+            counters.put(entry.getKey(), entry.getValue().getCount());
+        }
+        metrics.put("counters", counters);
+        
+        final Map<String, Object> meters = new TreeMap<>();
+        for (final Map.Entry<String, Meter> entry : metricRegistry.getMeters().entrySet()) {
+            meters.put(entry.getKey(), toMap(entry.getValue()));
+        }
+        metrics.put("meters", meters);
+        
+        final Map<String, Object> histograms = new TreeMap<>();
+        for (final Map.Entry<String, Histogram> entry : metricRegistry.getHistograms().entrySet()) {
+            final Map<String, Object> histogram = toMap(entry.getValue().getSnapshot(), 1);
+            histogram.put("count", entry.getValue().getCount());
+            histograms.put(entry.getKey(), histogram);
+        }
+        metrics.put("histograms", histograms);
+        
+        final Map<String, Object> timers = new TreeMap<>();
+        for (final Map.Entry<String, Timer> entry : metricRegistry.getTimers().entrySet()) {
+            final Map<String, Object> timer = toMap(entry.getValue());
+            timer.putAll(toMap(entry.getValue().getSnapshot(), MILLISECONDS_PER_NANOSECOND));
+            timers.put(entry.getKey(), timer);
+        }
+        metrics.put("timers", timers);
+        
+        return metrics;
+    }
+    
+    @ApiOperation(value = "get-metrics-prometheus",
+            notes = "Returns all metrics in the Prometheus text format")
+    @GET
+    @Produces(PrometheusTextFormat.CONTENT_TYPE)
+    @Path("/get-metrics-prometheus")
+    public String getMetricsPrometheus() {
+        return PrometheusTextFormat.write(metricRegistry);
+    }
+    
+    private static Map<String, Object> toMap(final Metered metered) {
+        final Map<String, Object> map = new TreeMap<>();
+        map.put("count", metered.getCount());
+        map.put("mean-rate", metered.getMeanRate());
+        map.put("m1-rate", metered.getOneMinuteRate());
+        map.put("m5-rate", metered.getFiveMinuteRate());
+        map.put("m15-rate", metered.getFifteenMinuteRate());
+        return map;
+    }
+    
+    private static Map<String, Object> toMap(final Snapshot snapshot, final double factor) {
+        final Map<String, Object> map = new TreeMap<>();
+        map.put("min", snapshot.getMin() * factor);
+        map.put("max", snapshot.getMax() * factor);
+        map.put("mean", snapshot.getMean() * factor);
+        map.put("p50", snapshot.getMedian() * factor);
+        map.put("p75", snapshot.get75thPercentile() * factor);
+        map.put("p95", snapshot.get95thPercentile() * factor);
+        map.put("p99", snapshot.get99thPercentile() * factor);
+        map.put("p999", snapshot.get999thPercentile() * factor);
+        return map;
+    }
+}
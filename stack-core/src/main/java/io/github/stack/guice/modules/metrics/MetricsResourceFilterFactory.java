@@ -0,0 +1,165 @@
+package io.github.stack.guice.modules.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.sun.jersey.api.model.AbstractMethod;
+import com.sun.jersey.api.model.AbstractResourceMethod;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import com.sun.jersey.spi.container.ResourceFilter;
+import com.sun.jersey.spi.container.ResourceFilterFactory;
+
+import javax.inject.Provider;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Attaches a timer, an in-flight counter and per status error meters to every resource method.
+ * Metrics are named {@code <resource class>.<method>.<metric>}.
+ * <p>
+ * Jersey skips response filters when a resource throws an exception that no mapper handles, so the
+ * {@link #getServletFilter() servlet filter} must wrap the Jersey servlet; it completes the metrics of any
+ * request the response filter did not.
+ */
+public class MetricsResourceFilterFactory implements ResourceFilterFactory {
+    
+    private static final String JERSEY_PACKAGE = "com.sun.jersey.";
+    private static final String PENDING_ATTRIBUTE = MetricsResourceFilterFactory.class.getName() + ".pending";
+    
+    private final MetricRegistry metricRegistry;
+    private final Provider<HttpServletRequest> servletRequest;
+    
+    /**
+     * @param metricRegistry
+     * @param servletRequest the current servlet request, used to hand in-flight requests to the servlet filter
+     */
+    public MetricsResourceFilterFactory(final MetricRegistry metricRegistry, final Provider<HttpServletRequest> servletRequest) {
+        this.metricRegistry = metricRegistry;
+        this.servletRequest = servletRequest;
+    }
+    
+    /**
+     * @return a filter that stops the timer and decrements the in-flight counter of requests that failed
+     * without a response
+     */
+    public Filter getServletFilter() {
+        return new Filter() {
+            
+            @Override
+            public void init(final FilterConfig filterConfig) throws ServletException {
+            }
+            
+            @Override
+            public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain) throws IOException, ServletException {
+                boolean failed = true;
+                try {
+                    chain.doFilter(request, response);
+                    failed = false;
+                } finally {
+                    final Pending pending = (Pending) request.getAttribute(PENDING_ATTRIBUTE);
+                    if (pending != null) {
+                        request.removeAttribute(PENDING_ATTRIBUTE);
+                        final int status = response instanceof HttpServletResponse ? ((HttpServletResponse) response).getStatus() : 0;
+                        pending.complete(failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : status);
+                    }
+                }
+            }
+            
+            @Override
+            public void destroy() {
+            }
+        };
+    }
+    
+    @Override
+    public List<ResourceFilter> create(final AbstractMethod abstractMethod) {
+        final Class<?> resourceClass = abstractMethod.getResource().getResourceClass();
+        if (!(abstractMethod instanceof AbstractResourceMethod) || resourceClass.getName().startsWith(JERSEY_PACKAGE)) {
+            return null;
+        }
+        
+        final String name = MetricRegistry.name(resourceClass, abstractMethod.getMethod().getName());
+        return Collections.singletonList(new MetricsResourceFilter(name));
+    }
+    
+    private final class MetricsResourceFilter implements ResourceFilter, ContainerRequestFilter, ContainerResponseFilter {
+        
+        private final String name;
+        private final Timer requests;
+        private final Counter inFlight;
+        private final ConcurrentMap<Integer, Meter> errors;
+        
+        private MetricsResourceFilter(final String name) {
+            this.name = name;
+            this.requests = SummingTimer.get(metricRegistry, MetricRegistry.name(name, "requests"));
+            this.inFlight = metricRegistry.counter(MetricRegistry.name(name, "in-flight"));
+            this.errors = new ConcurrentHashMap<>();
+        }
+        
+        @Override
+        public ContainerRequestFilter getRequestFilter() {
+            return this;
+        }
+        
+        @Override
+        public ContainerResponseFilter getResponseFilter() {
+            return this;
+        }
+        
+        @Override
+        public ContainerRequest filter(final ContainerRequest request) {
+            inFlight.inc();
+            servletRequest.get().setAttribute(PENDING_ATTRIBUTE, new Pending(this, requests.time()));
+            return request;
+        }
+        
+        @Override
+        public ContainerResponse filter(final ContainerRequest request, final ContainerResponse response) {
+            final HttpServletRequest httpServletRequest = servletRequest.get();
+            final Pending pending = (Pending) httpServletRequest.getAttribute(PENDING_ATTRIBUTE);
+            if (pending != null) {
+                httpServletRequest.removeAttribute(PENDING_ATTRIBUTE);
+                pending.complete(response.getStatus());
+            }
+            return response;
+        }
+        
+        private void complete(final Timer.Context context, final int status) {
+            context.stop();
+            inFlight.dec();
+            if (status >= 400) {
+                errors.computeIfAbsent(status, key -> metricRegistry.meter(MetricRegistry.name(name, "errors", String.valueOf(key)))).mark();
+            }
+        }
+    }
+    
+    private static final class Pending {
+        
+        private final MetricsResourceFilter filter;
+        private final Timer.Context context;
+        
+        private Pending(final MetricsResourceFilter filter, final Timer.Context context) {
+            this.filter = filter;
+            this.context = context;
+        }
+        
+        private void complete(final int status) {
+            filter.complete(context, status);
+        }
+    }
+}
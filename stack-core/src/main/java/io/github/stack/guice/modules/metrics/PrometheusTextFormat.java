@@ -0,0 +1,95 @@
+package io.github.stack.guice.modules.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a {@link MetricRegistry} in the Prometheus text exposition format (version 0.0.4).
+ * Timers registered by Stack are {@link SummingTimer}s and become summaries, meters become counters and gauges are
+ * only written when numeric.
+ * <p>
+ * Other timers and histograms do not keep the total that a summary requires as {@code _sum}, so their quantiles
+ * are written as a gauge and their count as a separate {@code _count} counter.
+ */
+final class PrometheusTextFormat {
+    
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+    
+    private static final double SECONDS_PER_NANOSECOND = 1.0 / TimeUnit.SECONDS.toNanos(1);
+    
+    private PrometheusTextFormat() {
+    }
+    
+    static String write(final MetricRegistry metricRegistry) {
+        final StringBuilder builder = new StringBuilder();
+        
+        metricRegistry.getGauges().forEach((name, gauge) -> {
+            final Object value = gauge.getValue();
+            if (value instanceof Number) {
+                writeSample(builder, sanitize(name), "gauge", ((Number) value).doubleValue());
+            } else if (value instanceof Boolean) {
+                writeSample(builder, sanitize(name), "gauge", (Boolean) value ? 1 : 0);
+            }
+        });
+        
+        for (final Map.Entry<String, Counter> entry : metricRegistry.getCounters().entrySet()) {
+            writeSample(builder, sanitize(entry.getKey()), "gauge", entry.getValue().getCount());
+        }
+        
+        for (final Map.Entry<String, Meter> entry : metricRegistry.getMeters().entrySet()) {
+            writeSample(builder, sanitize(entry.getKey()) + "_total", "counter", entry.getValue().getCount());
+        }
+        
+        for (final Map.Entry<String, Histogram> entry : metricRegistry.getHistograms().entrySet()) {
+            writeQuantiles(builder, sanitize(entry.getKey()), entry.getValue().getSnapshot(), entry.getValue().getCount(), 1, null);
+        }
+        
+        for (final Map.Entry<String, Timer> entry : metricRegistry.getTimers().entrySet()) {
+            final Timer timer = entry.getValue();
+            final Double sum = timer instanceof SummingTimer ? ((SummingTimer) timer).getSum() * SECONDS_PER_NANOSECOND : null;
+            writeQuantiles(builder, sanitize(entry.getKey()) + "_seconds", timer.getSnapshot(), timer.getCount(), SECONDS_PER_NANOSECOND, sum);
+        }
+        
+        return builder.toString();
+    }
+    
+    private static void writeSample(final StringBuilder builder, final String name, final String type, final double value) {
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        builder.append(name).append(' ').append(value).append('\n');
+    }
+    
+    /**
+     * Writes a summary if the sum is known, the quantiles as a gauge and the count as a counter otherwise.
+     */
+    private static void writeQuantiles(final StringBuilder builder, final String name, final Snapshot snapshot, final long count,
+                                       final double factor, final Double sum) {
+        builder.append("# TYPE ").append(name).append(sum != null ? " summary\n" : " gauge\n");
+        writeQuantile(builder, name, "0.5", snapshot.getMedian() * factor);
+        writeQuantile(builder, name, "0.75", snapshot.get75thPercentile() * factor);
+        writeQuantile(builder, name, "0.95", snapshot.get95thPercentile() * factor);
+        writeQuantile(builder, name, "0.99", snapshot.get99thPercentile() * factor);
+        writeQuantile(builder, name, "0.999", snapshot.get999thPercentile() * factor);
+        if (sum != null) {
+            builder.append(name).append("_sum ").append(sum).append('\n');
+            builder.append(name).append("_count ").append(count).append('\n');
+        } else {
+            writeSample(builder, name + "_count", "counter", count);
+        }
+    }
+    
+    private static void writeQuantile(final StringBuilder builder, final String name, final String quantile, final double value) {
+        builder.append(name).append("{quantile=\"").append(quantile).append("\"} ").append(value).append('\n');
+    }
+    
+    private static String sanitize(final String name) {
+        final String sanitized = name.replaceAll("[^a-zA-Z0-9_:]", "_");
+        return Character.isDigit(sanitized.charAt(0)) ? "_" + sanitized : sanitized;
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.stack.guice.modules.metrics;
+
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link Timer} that also keeps the total of all durations, which Prometheus summaries need as {@code _sum};
+ * the reservoir of a plain timer only holds a sample.
+ */
+final class SummingTimer extends Timer {
+    
+    private final LongAdder sum = new LongAdder();
+    
+    /**
+     * @param metricRegistry
+     * @param name
+     * @return the timer registered under the name, registering a SummingTimer if there is none
+     */
+    static Timer get(final MetricRegistry metricRegistry, final String name) {
+        final Metric existing = metricRegistry.getMetrics().get(name);
+        if (existing instanceof Timer) {
+            return (Timer) existing;
+        }
+        
+        try {
+            return metricRegistry.register(name, new SummingTimer());
+        } catch (IllegalArgumentException e) {
+            // registered concurrently, or as another type, which timer() reports
+            return metricRegistry.timer(name);
+        }
+    }
+    
+    @Override
+    public void update(final long duration, final TimeUnit unit) {
+        super.update(duration, unit);
+        if (duration >= 0) {
+            sum.add(unit.toNanos(duration));
+        }
+    }
+    
+    @Override
+    public <T> T time(final Callable<T> event) throws Exception {
+        final Context context = time();
+        try {
+            return event.call();
+        } finally {
+            context.stop();
+        }
+    }
+    
+    /**
+     * @return the total of all durations in nanoseconds
+     */
+    long getSum() {
+        return sum.sum();
+    }
+}
@@ -1,10 +1,14 @@
 package io.github.stack.guice.modules.swagger;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.inject.Scopes;
 import com.google.inject.servlet.ServletModule;
 import com.sun.jersey.api.core.PackagesResourceConfig;
 import com.sun.jersey.api.json.JSONConfiguration;
 import com.sun.jersey.guice.spi.container.servlet.GuiceContainer;
+import io.github.stack.guice.modules.metrics.MetricsResource;
+import io.github.stack.guice.modules.metrics.MetricsResourceFilterFactory;
+import io.github.stack.guice.modules.swagger.handler.exception.ThrowableMonitor;
 import io.github.stack.guice.modules.swagger.handler.exception.ThrowableResponseHandler;
 import io.github.stack.guice.modules.swagger.handler.exception.ThrowableResponseMapper;
 import org.slf4j.Logger;
@@ -16,11 +20,12 @@ import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
-import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class StackServletModule extends ServletModule {
@@ -28,9 +33,23 @@ public class StackServletModule extends ServletModule {
     private static final Logger log = LoggerFactory.getLogger(StackServletModule.class);
     
     private final ThrowableResponseHandler throwableResponseHandler;
+    private final MetricRegistry metricRegistry;
+    private final ThrowableMonitor throwableMonitor;
     
-    public StackServletModule(final ThrowableResponseHandler throwableResponseHandler) {
+    public StackServletModule(final ThrowableResponseHandler throwableResponseHandler, final MetricRegistry metricRegistry) {
+        this(throwableResponseHandler, metricRegistry, 0);
+    }
+    
+    /**
+     * @param throwableResponseHandler
+     * @param metricRegistry
+     * @param exceptionLogRate number of exceptions of one type logged per second, or 0 for no limit
+     */
+    public StackServletModule(final ThrowableResponseHandler throwableResponseHandler, final MetricRegistry metricRegistry,
+                              final double exceptionLogRate) {
         this.throwableResponseHandler = throwableResponseHandler;
+        this.metricRegistry = metricRegistry;
+        this.throwableMonitor = new ThrowableMonitor(metricRegistry, exceptionLogRate);
     }
     
     @Override
@@ -38,10 +57,19 @@ public class StackServletModule extends ServletModule {
         bind(GuiceContainer.class).in(Scopes.SINGLETON);
         
         final Map<String, String> parameters = new HashMap<>();
-        parameters.put(PackagesResourceConfig.PROPERTY_PACKAGES,
-                ThrowableResponseMapper.class.getPackage().getName());
+        // the mapper cannot be constructed by Jersey, so it is only scanned when it is also bound below
+        if (throwableResponseHandler != null) {
+            parameters.put(PackagesResourceConfig.PROPERTY_PACKAGES,
+                    ThrowableResponseMapper.class.getPackage().getName());
+        }
         parameters.put(JSONConfiguration.FEATURE_POJO_MAPPING, Boolean.TRUE.toString());
+        parameters.put(PackagesResourceConfig.PROPERTY_RESOURCE_FILTER_FACTORIES,
+                MetricsResourceFilterFactory.class.getName());
         serve("/*").with(GuiceContainer.class, parameters);
+        
+        final MetricsResourceFilterFactory metricsResourceFilterFactory =
+                new MetricsResourceFilterFactory(metricRegistry, getProvider(HttpServletRequest.class));
+        filter("/*").through(metricsResourceFilterFactory.getServletFilter());
         filter("/*").through(new Filter() {
             
             @Override
@@ -52,15 +80,14 @@ public class StackServletModule extends ServletModule {
             public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain) throws IOException, ServletException {
                 try {
                     chain.doFilter(request, response);
-                } catch (Exception e) {
-                    final Response handledResponse = throwableResponseHandler.respond(e);
-                    if (response instanceof HttpServletResponse) {
-                        final HttpServletResponse httpServletResponse = (HttpServletResponse) response;
-                        handledResponse.getHeaders().keySet().forEach(key -> httpServletResponse.addHeader(key, handledResponse.getHeaderString(key)));
-                        handledResponse.getCookies().entrySet().forEach(entry -> httpServletResponse.addCookie(new Cookie(entry.getKey(), entry.getValue().getValue())));
-                        httpServletResponse.getWriter().write(handledResponse.getEntity().toString());
-                        httpServletResponse.setStatus(handledResponse.getStatus());
+                } catch (IOException | ServletException | RuntimeException e) {
+                    throwableMonitor.record(e);
+                    // a committed response cannot be replaced, and without a handler there is nothing to replace it with
+                    if (throwableResponseHandler == null || response.isCommitted()
+                            || !(response instanceof HttpServletResponse)) {
+                        throw e;
                     }
+                    write(throwableResponseHandler.respond(e), (HttpServletResponse) response);
                 }
             }
             
@@ -69,8 +96,31 @@ public class StackServletModule extends ServletModule {
             }
         });
         
+        bind(MetricsResourceFilterFactory.class).toInstance(metricsResourceFilterFactory);
+        bind(MetricsResource.class).toInstance(new MetricsResource(metricRegistry));
+        
         if (throwableResponseHandler != null) {
-            bind(ThrowableResponseMapper.class).toInstance(new ThrowableResponseMapper(throwableResponseHandler));
+            bind(ThrowableResponseMapper.class).toInstance(new ThrowableResponseMapper(throwableResponseHandler, throwableMonitor));
+        }
+    }
+    
+    /**
+     * Status and headers go first, since they cannot be changed once the body is written. Cookies are written as
+     * their Set-Cookie headers.
+     */
+    private static void write(final Response response, final HttpServletResponse httpServletResponse) throws IOException {
+        httpServletResponse.setStatus(response.getStatus());
+        for (final Map.Entry<String, List<Object>> header : response.getMetadata().entrySet()) {
+            for (final Object value : header.getValue()) {
+                httpServletResponse.addHeader(header.getKey(), String.valueOf(value));
+            }
+        }
+        
+        final Object entity = response.getEntity();
+        if (entity instanceof byte[]) {
+            httpServletResponse.getOutputStream().write((byte[]) entity);
+        } else if (entity != null) {
+            httpServletResponse.getWriter().write(entity.toString());
         }
     }
 }
@@ -0,0 +1,80 @@
+package io.github.stack.guice.modules.swagger.handler.exception;
+
+import com.google.common.collect.ImmutableListMultimap;
+
+import javax.ws.rs.core.Response;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Answers known throwable types with responses built once, and all others through another handler.
+ * The response registered for a type also answers its subtypes that have none of their own.
+ */
+public final class CachedThrowableResponseHandler implements ThrowableResponseHandler {
+
+    private final ThrowableResponseHandler throwableResponseHandler;
+    private final ConcurrentMap<Class<?>, CachedResponse> responses = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, Optional<CachedResponse>> responsesByThrownType = new ConcurrentHashMap<>();
+
+    /**
+     * @param throwableResponseHandler handles the throwables without a cached response
+     */
+    public CachedThrowableResponseHandler(final ThrowableResponseHandler throwableResponseHandler) {
+        this.throwableResponseHandler = throwableResponseHandler;
+    }
+
+    /**
+     * The status, headers and entity are copied once; the entity should be immutable, such as a String or a
+     * byte array that is not modified afterwards.
+     *
+     * @param type
+     * @param response
+     * @return
+     */
+    public CachedThrowableResponseHandler withResponse(final Class<? extends Throwable> type, final Response response) {
+        responses.put(type, new CachedResponse(response));
+        responsesByThrownType.clear();
+        return this;
+    }
+
+    @Override
+    public Response respond(final Throwable throwable) {
+        final Optional<CachedResponse> cachedResponse = responsesByThrownType.computeIfAbsent(throwable.getClass(), this::find);
+        return cachedResponse.isPresent() ? cachedResponse.get().build() : throwableResponseHandler.respond(throwable);
+    }
+
+    private Optional<CachedResponse> find(final Class<?> thrownType) {
+        for (Class<?> type = thrownType; type != null; type = type.getSuperclass()) {
+            final CachedResponse cachedResponse = responses.get(type);
+            if (cachedResponse != null) {
+                return Optional.of(cachedResponse);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Each request gets a new Response around the cached parts, since the container may add headers to it.
+     */
+    private static final class CachedResponse {
+
+        private final int status;
+        private final ImmutableListMultimap<String, Object> headers;
+        private final Object entity;
+
+        private CachedResponse(final Response response) {
+            final ImmutableListMultimap.Builder<String, Object> headers = ImmutableListMultimap.builder();
+            response.getMetadata().forEach(headers::putAll);
+            this.status = response.getStatus();
+            this.headers = headers.build();
+            this.entity = response.getEntity();
+        }
+
+        private Response build() {
+            final Response.ResponseBuilder builder = Response.status(status).entity(entity);
+            headers.entries().forEach(header -> builder.header(header.getKey(), header.getValue()));
+            return builder.build();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package io.github.stack.guice.modules.swagger.handler.exception;
+
+/**
+ * Base class for expected errors, such as invalid input, that are thrown often enough for capturing a stack trace
+ * to matter. No stack trace is captured and none is logged by {@link ThrowableMonitor}.
+ */
+public class StacklessException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public StacklessException(final String message) {
+        super(message, null, false, false);
+    }
+
+    public StacklessException(final String message, final Throwable cause) {
+        super(message, cause, false, false);
+    }
+}
@@ -0,0 +1,67 @@
+package io.github.stack.guice.modules.swagger.handler.exception;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts and logs the throwables that end a request. Each throwable type has its own meter, registered as
+ * {@code exceptions.<class name>}, and its own log rate; throwables over the rate are only counted and reported
+ * with the next one that is logged.
+ */
+public final class ThrowableMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(ThrowableMonitor.class);
+
+    private final MetricRegistry metricRegistry;
+    private final double logsPerSecond;
+    private final ConcurrentMap<Class<?>, ThrowableType> types = new ConcurrentHashMap<>();
+
+    /**
+     * @param metricRegistry registry for the meters, or null to keep them unregistered
+     * @param logsPerSecond number of throwables of one type logged per second, or 0 for no limit
+     */
+    public ThrowableMonitor(final MetricRegistry metricRegistry, final double logsPerSecond) {
+        this.metricRegistry = metricRegistry;
+        this.logsPerSecond = logsPerSecond;
+    }
+
+    public void record(final Throwable throwable) {
+        final ThrowableType type = types.computeIfAbsent(throwable.getClass(), ThrowableType::new);
+        type.meter.mark();
+
+        if (type.rateLimiter != null && !type.rateLimiter.tryAcquire()) {
+            type.suppressed.incrementAndGet();
+            return;
+        }
+
+        final long suppressed = type.suppressed.getAndSet(0);
+        final String message = suppressed > 0
+                ? "Internal Server Error, " + suppressed + " more " + throwable.getClass().getName() + " not logged"
+                : "Internal Server Error";
+        if (throwable instanceof StacklessException) {
+            log.warn(message + ": " + throwable);
+        } else {
+            log.warn(message, throwable);
+        }
+    }
+
+    private final class ThrowableType {
+
+        private final Meter meter;
+        private final RateLimiter rateLimiter;
+        private final AtomicLong suppressed = new AtomicLong();
+
+        private ThrowableType(final Class<?> type) {
+            final String name = MetricRegistry.name("exceptions", type.getName());
+            this.meter = metricRegistry != null ? metricRegistry.meter(name) : new Meter();
+            this.rateLimiter = logsPerSecond > 0 ? RateLimiter.create(logsPerSecond) : null;
+        }
+    }
+}
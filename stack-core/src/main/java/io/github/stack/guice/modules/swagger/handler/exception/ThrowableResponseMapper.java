@@ -1,9 +1,6 @@
 package io.github.stack.guice.modules.swagger.handler.exception;
 
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.ExceptionMapper;
 import javax.ws.rs.ext.Provider;
@@ -11,17 +8,22 @@ import javax.ws.rs.ext.Provider;
 @Provider
 public class ThrowableResponseMapper implements ExceptionMapper<Throwable> {
 
-    private static final Logger log = LoggerFactory.getLogger(ThrowableResponseMapper.class);
-
     private final ThrowableResponseHandler throwableResponseHandler;
+    private final ThrowableMonitor throwableMonitor;
 
     public ThrowableResponseMapper(final ThrowableResponseHandler throwableResponseHandler) {
+        this(throwableResponseHandler, new ThrowableMonitor(null, 0));
+    }
+
+    public ThrowableResponseMapper(final ThrowableResponseHandler throwableResponseHandler,
+                                   final ThrowableMonitor throwableMonitor) {
         this.throwableResponseHandler = throwableResponseHandler;
+        this.throwableMonitor = throwableMonitor;
     }
 
     @Override
     public Response toResponse(final Throwable throwable) {
-        log.warn("Internal Server Error", throwable);
+        throwableMonitor.record(throwable);
         return throwableResponseHandler.respond(throwable);
     }
 }
\ No newline at end of file
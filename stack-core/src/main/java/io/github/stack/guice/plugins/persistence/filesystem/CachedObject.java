@@ -0,0 +1,23 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+/**
+ * A deserialized object held by the {@link FileSystemManager} cache, weighed by its serialized size.
+ */
+final class CachedObject {
+
+    private final Object object;
+    private final int weight;
+
+    CachedObject(final Object object, final int weight) {
+        this.object = object;
+        this.weight = weight;
+    }
+
+    Object getObject() {
+        return object;
+    }
+
+    int getWeight() {
+        return weight;
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import javax.ws.rs.core.MediaType;
+import java.util.function.Supplier;
+
+/**
+ * Format of the stored objects. Objects written with one codec cannot be read with another, so the codec of an
+ * existing file system must not be changed.
+ */
+public enum Codec {
+
+    /**
+     * Text JSON; readable with any tool but the largest and slowest to parse.
+     */
+    JSON(MediaType.APPLICATION_JSON, JsonFactory::new),
+
+    /**
+     * Binary JSON that back-references repeated field names and short strings.
+     */
+    SMILE("application/x-jackson-smile", SmileFactory::new),
+
+    /**
+     * Concise Binary Object Representation (RFC 7049).
+     */
+    CBOR("application/cbor", CBORFactory::new);
+
+    private final String mediaType;
+    private final Supplier<JsonFactory> factory;
+
+    Codec(final String mediaType, final Supplier<JsonFactory> factory) {
+        this.mediaType = mediaType;
+        this.factory = factory;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    ObjectMapper newObjectMapper() {
+        return new ObjectMapper(factory.get());
+    }
+}
@@ -0,0 +1,157 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Stores every object in its own file, named after its id.
+ * <p>
+ * Every write goes to a hidden temporary file that is then atomically renamed over the object, so readers see
+ * either the old or the new object but never a partial one. Temporary files left behind by a crash are removed on
+ * startup. Concurrent writes to the same id must be serialized by the caller.
+ * <p>
+ * A durable write forces the temporary file before the rename and the directory after it.
+ * {@link Durability#PER_BATCH} forces every temporary file of a batch before closing it but renames them all before
+ * forcing the directory once.
+ */
+final class DirectoryStore implements FileSystemStore {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File fileSystem;
+    private final Durability durability;
+
+    DirectoryStore(final File fileSystem, final Durability durability) throws IOException {
+        this.fileSystem = fileSystem;
+        this.durability = durability;
+
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(fileSystem.toPath(), ".*" + TEMP_SUFFIX)) {
+            for (final Path path : paths) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Override
+    public void write(final String id, final byte[] bytes) throws IOException {
+        final Path temp = tempPath(id);
+        writeFile(temp, bytes, durability != Durability.NONE);
+        rename(temp, id);
+        if (durability != Durability.NONE) {
+            forceDirectory();
+        }
+    }
+
+    @Override
+    public void writeAll(final Map<String, byte[]> objects) throws IOException {
+        if (durability == Durability.PER_OPERATION) {
+            for (final Map.Entry<String, byte[]> entry : objects.entrySet()) {
+                write(entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+
+        for (final Map.Entry<String, byte[]> entry : objects.entrySet()) {
+            writeFile(tempPath(entry.getKey()), entry.getValue(), durability == Durability.PER_BATCH);
+        }
+        for (final String id : objects.keySet()) {
+            rename(tempPath(id), id);
+        }
+        if (durability != Durability.NONE) {
+            forceDirectory();
+        }
+    }
+
+    @Override
+    public byte[] read(final String id) throws IOException {
+        return Files.readAllBytes(new File(fileSystem, id).toPath());
+    }
+
+    @Override
+    public ByteBuffer map(final String id) throws IOException {
+        try (FileChannel channel = FileChannel.open(new File(fileSystem, id).toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading
+            }
+            buffer.flip();
+            return buffer.asReadOnlyBuffer();
+        }
+    }
+
+    @Override
+    public boolean exists(final String id) {
+        return new File(fileSystem, id).isFile();
+    }
+
+    @Override
+    public void delete(final String id) throws IOException {
+        Files.delete(new File(fileSystem, id).toPath());
+        if (durability != Durability.NONE) {
+            forceDirectory();
+        }
+    }
+
+    @Override
+    public Stream<String> ids() throws IOException {
+        final DirectoryStream<Path> paths = Files.newDirectoryStream(fileSystem.toPath(),
+                path -> Files.isRegularFile(path) && !path.getFileName().toString().startsWith("."));
+        return StreamSupport.stream(paths.spliterator(), false)
+                .map(path -> path.getFileName().toString())
+                .onClose(() -> {
+                    try {
+                        paths.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private Path tempPath(final String id) {
+        return new File(fileSystem, "." + id + TEMP_SUFFIX).toPath();
+    }
+
+    private void rename(final Path temp, final String id) throws IOException {
+        Files.move(temp, new File(fileSystem, id).toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeFile(final Path path, final byte[] bytes, final boolean force) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (force) {
+                channel.force(true);
+            }
+        }
+    }
+
+    private void forceDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(fileSystem.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories cannot be opened on every platform; the file contents are forced regardless
+        }
+    }
+}
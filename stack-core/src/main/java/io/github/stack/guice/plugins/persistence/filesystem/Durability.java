@@ -0,0 +1,25 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+/**
+ * When writes are forced to disk. Writes that are not forced survive a JVM crash but not a power loss or
+ * kernel crash.
+ */
+public enum Durability {
+
+    /**
+     * Writes are never forced; the operating system flushes them in its own time.
+     */
+    NONE,
+
+    /**
+     * A batch is forced once after all of its writes; single writes are forced individually. The log-structured
+     * and write-ahead log stores share a force between concurrent writers (group commit). The directory store
+     * has no shared log to force, so it forces every file of a batch and the directory once.
+     */
+    PER_BATCH,
+
+    /**
+     * Every write is forced before it returns, including every write of a batch.
+     */
+    PER_OPERATION
+}
@@ -1,72 +1,867 @@
 package io.github.stack.guice.plugins.persistence.filesystem;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * Uses best effort to serialize and deserialize the given class using ObjectMapper.
+ * Uses best effort to serialize and deserialize the given class using ObjectMapper, in the format of the
+ * configured {@link Codec}. Objects are encoded straight to bytes and decoded straight from bytes through an
+ * ObjectReader and ObjectWriter cached per class.
+ * <p>
+ * When configured with a cache, reads are served from memory and the disk stays the source of truth;
+ * cached objects are shared between readers and must not be mutated.
+ * <p>
+ * Fields declared with {@link FileSystemModule#withIndex(String...)} are indexed on every write and can be
+ * queried with {@link #findIds(String, Object)} and {@link #findIds(String, Object, Object)} without reading the
+ * stored objects.
+ * <p>
+ * Every operation has an asynchronous variant that runs on the bounded I/O executor and completes a
+ * {@link CompletableFuture}, so callers can compose operations without waiting on the disk. When the I/O queue is
+ * full the future fails with a {@link RejectedExecutionException} instead of the backlog growing.
+ * <p>
+ * Writes to the same id are serialized by striped locks, so writers of different ids proceed in parallel, and every
+ * write advances the version of the object; {@link #compareAndSet(String, long, Object)} updates an object only if
+ * no one else wrote it since it was read. Reads take no locks.
+ * <p>
+ * Versions are kept in a fixed number of counters (32 KB) rather than per id, so they take no memory per object.
+ * Ids that share a counter advance each other's version: a compareAndSet may then fail even though its object was
+ * not written, but never succeeds over a concurrent write.
+ * <p>
+ * With {@link FileSystemModule#withWriteBehind} updates are buffered in memory and flushed in batches, so hot objects
+ * that are updated many times a second are written once per flush. Reads see the buffered objects.
+ * <p>
+ * {@link #scan(Class)} and {@link #scanPage(Class, String, int)} iterate over all objects without loading them at
+ * once; a resource can return a scan as chunked JSON through {@link ScanOutput}.
  */
 public class FileSystemManager {
 
     private static final Logger log = LoggerFactory.getLogger(FileSystemManager.class);
 
+    /**
+     * Expected version of an id that holds no object.
+     */
+    public static final long ABSENT = 0;
+
+    private static final int LOCK_STRIPES = 1024;
+    private static final int VERSION_STRIPES = 4096;
+    private static final int FLUSH_BATCH_SIZE = 128;
+
     private final ObjectMapper objectMapper;
-    private final File fileSystem;
+    private final String mediaType;
+    private final ConcurrentMap<Class<?>, ObjectReader> readers;
+    private final ConcurrentMap<Class<?>, ObjectWriter> writers;
+    private final FileSystemStore store;
+    private final Cache<String, CachedObject> cache;
+    private final SecondaryIndexes indexes;
+    private final ExecutorService ioExecutor;
+    private final int ioThreads;
+    private final Striped<Lock> locks;
+    private final AtomicLongArray versions;
+    private final ConcurrentMap<String, byte[]> dirty;
+    private final int writeBehindMaxSize;
+    private final ReentrantLock flushLock;
 
     /**
      * Package private constructor to prevent creation of this object.
      */
-    FileSystemManager(final ObjectMapper objectMapper, final File fileSystem) {
+    FileSystemManager(final Codec codec,
+                      final ObjectMapper objectMapper,
+                      final FileSystemStore store,
+                      final Cache<String, CachedObject> cache,
+                      final SecondaryIndexes indexes,
+                      final ExecutorService ioExecutor,
+                      final int ioThreads,
+                      final int writeBehindMaxSize) {
         this.objectMapper = objectMapper;
-        this.fileSystem = fileSystem;
+        this.mediaType = codec.getMediaType();
+        this.readers = new ConcurrentHashMap<>();
+        this.writers = new ConcurrentHashMap<>();
+        this.store = store;
+        this.cache = cache;
+        this.indexes = indexes;
+        this.ioExecutor = ioExecutor;
+        this.ioThreads = ioThreads;
+        this.locks = Striped.lock(LOCK_STRIPES);
+        this.versions = new AtomicLongArray(VERSION_STRIPES);
+        // exceeds every version handed out before a restart, unless a counter advanced a thousand times a millisecond
+        final long initialVersion = System.currentTimeMillis() * 1000;
+        for (int i = 0; i < VERSION_STRIPES; i++) {
+            this.versions.set(i, initialVersion);
+        }
+        this.dirty = new ConcurrentHashMap<>();
+        this.writeBehindMaxSize = writeBehindMaxSize;
+        this.flushLock = new ReentrantLock();
     }
 
     public <T> String create(final T object) {
+        final String id = newId();
+        final Lock lock = locks.get(id);
+        lock.lock();
         try {
-            final String serializedObject = objectMapper.writeValueAsString(object);
-            final String id = Integer.toHexString(object.hashCode());
-
-            Files.write(new File(fileSystem, id).toPath(), serializedObject.getBytes());
+            final int length = write(id, object);
 
-            log.info("Created: " + serializedObject);
+            log.info("Created: " + id + " (" + length + " bytes)");
             return id;
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Creates all objects as one batch; with {@link Durability#PER_BATCH} they share a single force to disk.
+     *
+     * @param objects
+     * @return the ids, in the order of the objects
+     */
+    public <T> List<String> createAll(final Collection<T> objects) {
+        final Map<String, T> objectsById = new LinkedHashMap<>();
+        for (final T object : objects) {
+            objectsById.put(newId(), object);
+        }
+
+        final Iterable<Lock> batchLocks = locks.bulkGet(objectsById.keySet());
+        batchLocks.forEach(Lock::lock);
+        try {
+            writeAll(objectsById);
+
+            log.info("Created: " + objectsById.size() + " objects");
+            return new ArrayList<>(objectsById.keySet());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            batchLocks.forEach(Lock::unlock);
         }
     }
 
     public <T> T read(final String id, final Class<T> clazz) {
+        final byte[] buffered = dirty.get(id);
+        if (buffered != null) {
+            try {
+                return readers.computeIfAbsent(clazz, objectMapper::reader).readValue(buffered);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        if (cache != null) {
+            final CachedObject cachedObject = cache.getIfPresent(id);
+            if (cachedObject != null && clazz.isInstance(cachedObject.getObject())) {
+                return clazz.cast(cachedObject.getObject());
+            }
+        }
+
+        try {
+            final long version = currentVersion(id);
+            final byte[] serializedObject = store.read(id);
+
+            log.info("Read: " + id + " (" + serializedObject.length + " bytes)");
+            final T object = readers.computeIfAbsent(clazz, objectMapper::reader).readValue(serializedObject);
+            if (cache != null) {
+                cache.put(id, new CachedObject(object, serializedObject.length));
+                // a write that raced with this read may already have invalidated the cache
+                if (version != currentVersion(id)) {
+                    cache.invalidate(id);
+                }
+            }
+            return object;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads the object together with its current version, for a later {@link #compareAndSet(String, long, Object)}.
+     *
+     * @param id
+     * @param clazz
+     * @return
+     */
+    public <T> Versioned<T> readVersioned(final String id, final Class<T> clazz) {
+        final Lock lock = locks.get(id);
+        lock.lock();
+        try {
+            return new Versioned<>(read(id, clazz), currentVersion(id));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current version of the object. Versions only increase, across updates, deletes and restarts.
+     *
+     * @param id
+     * @return
+     */
+    public long getVersion(final String id) {
+        final Lock lock = locks.get(id);
+        lock.lock();
         try {
-            final String serializedObject = new String(Files.readAllBytes(new File(fileSystem, id).toPath()));
+            if (!exists(id)) {
+                throw new RuntimeException(new NoSuchFileException(id));
+            }
+            return currentVersion(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads all objects in parallel on the I/O threads.
+     *
+     * @param ids
+     * @param clazz
+     * @return the objects by id, in the order of the ids
+     */
+    public <T> Map<String, T> readAll(final Collection<String> ids, final Class<T> clazz) {
+        return readAll(ids, clazz, false);
+    }
+
+    /**
+     * Lists the ids of all objects lazily, without reading them. Objects written or deleted during the listing may
+     * or may not be included.
+     *
+     * @return the ids, to be closed after use
+     */
+    public Stream<String> scanIds() {
+        try {
+            final Stream<String> stored = store.ids();
+            if (dirty.isEmpty()) {
+                return stored;
+            }
+
+            final Set<String> buffered = new HashSet<>(dirty.keySet());
+            return Stream.concat(buffered.stream(), stored.filter(id -> !buffered.contains(id)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads all objects lazily, one at a time as the stream is consumed, so only the objects in use are held in
+     * memory. Objects deleted during the scan are skipped.
+     *
+     * @param clazz
+     * @return the objects by id, to be closed after use
+     */
+    public <T> Stream<Map.Entry<String, T>> scan(final Class<T> clazz) {
+        return scanIds()
+                .<Map.Entry<String, T>>map(id -> {
+                    final T object = readIfExists(id, clazz);
+                    return object == null ? null : new AbstractMap.SimpleImmutableEntry<>(id, object);
+                })
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Reads all objects lazily, a batch at a time; the objects of a batch are read in parallel on the I/O threads.
+     *
+     * @param clazz
+     * @param batchSize
+     * @return the objects by id, to be closed after use
+     */
+    public <T> Stream<Map.Entry<String, T>> scan(final Class<T> clazz, final int batchSize) {
+        final Stream<String> ids = scanIds();
+        final Iterator<List<String>> batches = Iterators.partition(ids.iterator(), batchSize);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(batches, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .flatMap(batch -> readAll(batch, clazz, true).entrySet().stream())
+                .onClose(ids::close);
+    }
+
+    /**
+     * Reads one page of objects in id order. Each page lists the ids again but keeps only the page in memory, so
+     * pages stay consistent while objects are added or deleted between them.
+     *
+     * @param clazz
+     * @param cursor the cursor of the previous page, or null for the first page
+     * @param limit  maximum number of objects in the page
+     * @return
+     */
+    public <T> Page<T> scanPage(final Class<T> clazz, final String cursor, final int limit) {
+        Preconditions.checkArgument(limit > 0, "limit must be positive");
 
-            log.info("Read: " + serializedObject);
-            return objectMapper.readValue(serializedObject, clazz);
+        // one id more than the page, to tell whether another page follows
+        final PriorityQueue<String> smallestIds = new PriorityQueue<>(limit + 2, Comparator.reverseOrder());
+        try (Stream<String> ids = scanIds()) {
+            ids.filter(id -> cursor == null || id.compareTo(cursor) > 0).forEach(id -> {
+                smallestIds.add(id);
+                if (smallestIds.size() > limit + 1) {
+                    smallestIds.poll();
+                }
+            });
+        }
+
+        final boolean more = smallestIds.size() > limit;
+        if (more) {
+            smallestIds.poll();
+        }
+        final List<String> pageIds = new ArrayList<>(smallestIds);
+        Collections.sort(pageIds);
+        final String nextCursor = more ? pageIds.get(pageIds.size() - 1) : null;
+        return new Page<>(readAll(pageIds, clazz, true), nextCursor);
+    }
+
+    /**
+     * Returns the stored representation of the object, in the format of the configured {@link Codec}, without
+     * deserializing it. Large objects are memory-mapped,
+     * and a resource that returns the {@link StoredObject} has it streamed to the response with a Content-Length.
+     *
+     * @param id
+     * @return
+     */
+    public StoredObject readRaw(final String id) {
+        if (dirty.containsKey(id)) {
+            flush(Collections.singletonList(id));
+        }
+
+        try {
+            return new StoredObject(store.map(id), mediaType);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * With write-behind the object is buffered and written later; repeated updates of the same id are coalesced.
+     *
+     * @param id
+     * @param object
+     */
     public <T> void update(final String id, final T object) {
+        final Lock lock = locks.get(id);
+        lock.lock();
+        try {
+            if (writeBehindMaxSize > 0) {
+                buffer(id, object);
+            } else {
+                final int length = write(id, object);
+
+                log.info("Updated: " + id + " (" + length + " bytes)");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            lock.unlock();
+        }
+        flushIfFull();
+    }
+
+    /**
+     * Replaces the object only if its current version is the expected one; with {@link #ABSENT} the object is only
+     * created if the id holds none.
+     *
+     * @param id
+     * @param expectedVersion as returned by {@link #getVersion(String)} or {@link #readVersioned(String, Class)}
+     * @param object
+     * @return whether the object was written
+     */
+    public <T> boolean compareAndSet(final String id, final long expectedVersion, final T object) {
+        final Lock lock = locks.get(id);
+        lock.lock();
+        try {
+            final long version = exists(id) ? currentVersion(id) : ABSENT;
+            if (version != expectedVersion) {
+                return false;
+            }
+
+            final int length = write(id, object);
+
+            log.info("Updated: " + id + " (" + length + " bytes)");
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Updates all objects as one batch; with {@link Durability#PER_BATCH} they share a single force to disk.
+     *
+     * @param objects objects by id
+     */
+    public <T> void updateAll(final Map<String, T> objects) {
+        final Iterable<Lock> batchLocks = locks.bulkGet(objects.keySet());
+        batchLocks.forEach(Lock::lock);
         try {
-            final String serializedObject = objectMapper.writeValueAsString(object);
+            if (writeBehindMaxSize > 0) {
+                objects.forEach(this::buffer);
+            } else {
+                writeAll(objects);
 
-            log.info("Updated: " + serializedObject);
-            Files.write(new File(fileSystem, id).toPath(), serializedObject.getBytes());
+                log.info("Updated: " + objects.size() + " objects");
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            batchLocks.forEach(Lock::unlock);
         }
+        flushIfFull();
     }
 
     public void delete(final String id) {
+        final Lock lock = locks.get(id);
+        lock.lock();
+        try {
+            final boolean buffered = dirty.remove(id) != null;
+            if (!buffered || store.exists(id)) {
+                store.delete(id);
+            }
+            indexes.remove(id);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            written(id);
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Asynchronous {@link #create(Object)}.
+     *
+     * @param object
+     * @return the id, or a {@link RejectedExecutionException} when the I/O queue is full
+     */
+    public <T> CompletableFuture<String> createAsync(final T object) {
+        return async(() -> create(object));
+    }
+
+    /**
+     * Asynchronous {@link #read(String, Class)}.
+     *
+     * @param id
+     * @param clazz
+     * @return the object, or a {@link RejectedExecutionException} when the I/O queue is full
+     */
+    public <T> CompletableFuture<T> readAsync(final String id, final Class<T> clazz) {
+        return async(() -> read(id, clazz));
+    }
+
+    /**
+     * Asynchronous {@link #update(String, Object)}.
+     *
+     * @param id
+     * @param object
+     * @return completes once written, or with a {@link RejectedExecutionException} when the I/O queue is full
+     */
+    public <T> CompletableFuture<Void> updateAsync(final String id, final T object) {
+        return async(() -> {
+            update(id, object);
+            return null;
+        });
+    }
+
+    /**
+     * Asynchronous {@link #compareAndSet(String, long, Object)}.
+     *
+     * @param id
+     * @param expectedVersion
+     * @param object
+     * @return whether the object was written, or a {@link RejectedExecutionException} when the I/O queue is full
+     */
+    public <T> CompletableFuture<Boolean> compareAndSetAsync(final String id, final long expectedVersion, final T object) {
+        return async(() -> compareAndSet(id, expectedVersion, object));
+    }
+
+    /**
+     * Asynchronous {@link #delete(String)}.
+     *
+     * @param id
+     * @return completes once deleted, or with a {@link RejectedExecutionException} when the I/O queue is full
+     */
+    public CompletableFuture<Void> deleteAsync(final String id) {
+        return async(() -> {
+            delete(id);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the ids of the objects whose indexed field equals the value.
+     *
+     * @param field an indexed field
+     * @param value
+     * @return
+     */
+    public List<String> findIds(final String field, final Object value) {
+        return new ArrayList<>(indexes.get(field).equal(value));
+    }
+
+    /**
+     * Returns the ids of the objects whose indexed field lies between the bounds, ordered by field value.
+     *
+     * @param field an indexed field
+     * @param from  inclusive lower bound, or null for none
+     * @param to    inclusive upper bound, or null for none
+     * @return
+     */
+    public List<String> findIds(final String field, final Object from, final Object to) {
+        return new ArrayList<>(indexes.get(field).range(from, to));
+    }
+
+    /**
+     * Reads the objects whose indexed field equals the value.
+     *
+     * @param field an indexed field
+     * @param value
+     * @param clazz
+     * @return the objects by id
+     */
+    public <T> Map<String, T> find(final String field, final Object value, final Class<T> clazz) {
+        return readAll(findIds(field, value), clazz);
+    }
+
+    /**
+     * Reads the objects whose indexed field lies between the bounds, ordered by field value.
+     *
+     * @param field an indexed field
+     * @param from  inclusive lower bound, or null for none
+     * @param to    inclusive upper bound, or null for none
+     * @param clazz
+     * @return the objects by id
+     */
+    public <T> Map<String, T> find(final String field, final Object from, final Object to, final Class<T> clazz) {
+        return readAll(findIds(field, from, to), clazz);
+    }
+
+    /**
+     * Writes the updates buffered by write-behind to the store. Called by {@link WriteBehindService} at its interval,
+     * whenever the buffer reaches its maximum size, and on {@link #close()}.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            flush(new ArrayList<>(dirty.keySet()));
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the hit, miss and eviction statistics of the cache, if one is configured.
+     *
+     * @return
+     */
+    public Optional<CacheStats> getCacheStats() {
+        return cache == null ? Optional.empty() : Optional.of(cache.stats());
+    }
+
+    /**
+     * Flushes buffered updates, stops the I/O threads and releases the underlying storage engine.
+     */
+    public void close() {
+        // holds the flush lock until the store is closed, so a concurrent flush completes first and none starts after
+        flushLock.lock();
+        try {
+            close(new ArrayList<>(dirty.keySet()));
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void close(final List<String> buffered) {
         try {
-            Files.delete(new File(fileSystem, id).toPath());
+            flush(buffered);
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush " + dirty.size() + " buffered updates", e);
+        }
+
+        ioExecutor.shutdown();
+        try {
+            ioExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            indexes.save();
+            store.close();
         } catch (IOException e) {
+            log.warn("Failed to close " + store, e);
+        }
+    }
+
+    private <T> CompletableFuture<T> async(final Supplier<T> operation) {
+        try {
+            return CompletableFuture.supplyAsync(operation, ioExecutor);
+        } catch (RejectedExecutionException e) {
+            final CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * Writes the object; the caller holds the lock of the id.
+     *
+     * @return the serialized length
+     */
+    private int write(final String id, final Object object) throws IOException {
+        try {
+            final JsonNode document = toDocument(object);
+            final byte[] serializedObject = serialize(object, document);
+
+            store.write(id, serializedObject);
+            dirty.remove(id);
+            index(id, document);
+            return serializedObject.length;
+        } finally {
+            written(id);
+        }
+    }
+
+    /**
+     * Writes the objects as one batch; the caller holds the locks of the ids.
+     */
+    private void writeAll(final Map<String, ?> objects) throws IOException {
+        try {
+            final Map<String, byte[]> serializedObjects = new LinkedHashMap<>();
+            final Map<String, JsonNode> documents = new LinkedHashMap<>();
+            for (final Map.Entry<String, ?> entry : objects.entrySet()) {
+                final JsonNode document = toDocument(entry.getValue());
+                serializedObjects.put(entry.getKey(), serialize(entry.getValue(), document));
+                documents.put(entry.getKey(), document);
+            }
+
+            store.writeAll(serializedObjects);
+            objects.keySet().forEach(dirty::remove);
+            documents.forEach(this::index);
+        } finally {
+            objects.keySet().forEach(this::written);
+        }
+    }
+
+    /**
+     * Partitions are taken by the calling thread and by helpers submitted to the I/O threads alike, and the caller
+     * only waits for partitions that are already being read. A full I/O queue or a call from an I/O thread
+     * therefore reads on the caller instead of failing or deadlocking.
+     *
+     * @param skipMissing whether objects that do not exist are left out instead of failing the whole read
+     */
+    private <T> Map<String, T> readAll(final Collection<String> ids, final Class<T> clazz, final boolean skipMissing) {
+        final Map<String, T> objects = new ConcurrentHashMap<>();
+        final int partitionSize = Math.max(1, ids.size() / (ioThreads * 4));
+        final List<List<String>> partitions = Lists.partition(new ArrayList<>(ids), partitionSize);
+        final AtomicInteger nextPartition = new AtomicInteger();
+        final CountDownLatch remainingPartitions = new CountDownLatch(partitions.size());
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        final Runnable reader = () -> {
+            for (int i = nextPartition.getAndIncrement(); i < partitions.size(); i = nextPartition.getAndIncrement()) {
+                try {
+                    if (failure.get() == null) {
+                        for (final String id : partitions.get(i)) {
+                            final T object = skipMissing ? readIfExists(id, clazz) : read(id, clazz);
+                            if (object != null) {
+                                objects.put(id, object);
+                            }
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    remainingPartitions.countDown();
+                }
+            }
+        };
+
+        for (int i = 1; i < Math.min(ioThreads + 1, partitions.size()); i++) {
+            try {
+                ioExecutor.execute(reader);
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+        reader.run();
+        Uninterruptibles.awaitUninterruptibly(remainingPartitions);
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        final Map<String, T> orderedObjects = new LinkedHashMap<>();
+        ids.stream().filter(objects::containsKey).forEach(id -> orderedObjects.put(id, objects.get(id)));
+        return orderedObjects;
+    }
+
+    /**
+     * @return the object, or null if it does not exist
+     */
+    private <T> T readIfExists(final String id, final Class<T> clazz) {
+        try {
+            return read(id, clazz);
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof NoSuchFileException) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Buffers the object for write-behind, serialized so that neither the caller nor readers share the buffered
+     * instance; the caller holds the lock of the id.
+     */
+    private void buffer(final String id, final Object object) {
+        final JsonNode document = toDocument(object);
+        final byte[] serializedObject;
+        try {
+            serializedObject = serialize(object, document);
+        } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
+        index(id, document);
+        dirty.put(id, serializedObject);
+        written(id);
+    }
+
+    private void flushIfFull() {
+        // callers that find a flush in progress carry on instead of queueing behind it
+        if (writeBehindMaxSize > 0 && dirty.size() >= writeBehindMaxSize && flushLock.tryLock()) {
+            try {
+                flush(new ArrayList<>(dirty.keySet()));
+            } catch (RuntimeException e) {
+                // the update itself is buffered; the next flush retries
+                log.warn("Failed to flush " + dirty.size() + " buffered updates", e);
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered objects in batches, taking the locks of one batch at a time. Versions are left alone, since
+     * the buffered objects were already visible.
+     */
+    private void flush(final List<String> ids) {
+        for (final List<String> batch : Lists.partition(ids, FLUSH_BATCH_SIZE)) {
+            final Iterable<Lock> batchLocks = locks.bulkGet(batch);
+            batchLocks.forEach(Lock::lock);
+            try {
+                final Map<String, byte[]> serializedObjects = new LinkedHashMap<>();
+                for (final String id : batch) {
+                    final byte[] serializedObject = dirty.get(id);
+                    if (serializedObject != null) {
+                        serializedObjects.put(id, serializedObject);
+                    }
+                }
+
+                store.writeAll(serializedObjects);
+                serializedObjects.keySet().forEach(dirty::remove);
+                log.info("Flushed: " + serializedObjects.size() + " objects");
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                batchLocks.forEach(Lock::unlock);
+            }
+        }
+    }
+
+    private boolean exists(final String id) {
+        return dirty.containsKey(id) || store.exists(id);
+    }
+
+    /**
+     * Random ids instead of hash codes, so distinct objects never share an id.
+     */
+    private String newId() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        String id;
+        do {
+            id = new UUID(random.nextLong(), random.nextLong()).toString();
+        } while (exists(id));
+        return id;
+    }
+
+    private long currentVersion(final String id) {
+        return versions.get(versionStripe(id));
+    }
+
+    private static int versionStripe(final String id) {
+        final int hash = id.hashCode();
+        return (hash ^ (hash >>> 16)) & (VERSION_STRIPES - 1);
+    }
+
+    /**
+     * Advances the version before invalidating the cache, so that a concurrent {@link #read(String, Class)} notices
+     * the write and does not cache what it read before it. The caller holds the lock of the id.
+     */
+    private void written(final String id) {
+        versions.incrementAndGet(versionStripe(id));
+        invalidate(id);
+    }
+
+    /**
+     * Serializes the indexed document when there is one, so the object is only converted once.
+     */
+    private byte[] serialize(final Object object, final JsonNode document) throws JsonProcessingException {
+        final Object value = document != null ? document : object;
+        return writers.computeIfAbsent(value.getClass(), objectMapper::writerWithType).writeValueAsBytes(value);
+    }
+
+    /**
+     * @return the object as a tree when fields are indexed, otherwise null
+     */
+    private JsonNode toDocument(final Object object) {
+        return indexes.isEmpty() ? null : objectMapper.valueToTree(object);
+    }
+
+    private void index(final String id, final JsonNode document) {
+        if (document != null) {
+            indexes.put(id, document);
+        }
+    }
+
+    private void invalidate(final String id) {
+        if (cache != null) {
+            cache.invalidate(id);
+        }
     }
 }
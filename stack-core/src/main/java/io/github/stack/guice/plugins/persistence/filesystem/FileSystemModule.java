@@ -2,17 +2,50 @@ package io.github.stack.guice.plugins.persistence.filesystem;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.AbstractModule;
+import com.google.inject.Provider;
 import com.google.inject.Provides;
+import com.google.inject.Scopes;
 import com.google.inject.Singleton;
+import io.github.stack.guice.ShutdownHooks;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class FileSystemModule extends AbstractModule {
     
     private final File fileSystem;
     
+    private StorageEngine storageEngine = StorageEngine.DIRECTORY;
+    private Codec codec = Codec.JSON;
+    private Durability durability = Durability.NONE;
+    private int ioThreads = 2 * Runtime.getRuntime().availableProcessors();
+    private int ioQueueCapacity = 1024;
+    private final Set<String> indexedFields = new LinkedHashSet<>();
+    private long segmentSize = 64 * 1024 * 1024;
+    private double compactionThreshold = 0.5;
+    private long compactionInterval = TimeUnit.MINUTES.toMillis(1);
+    private long checkpointInterval = 0;
+    private long checkpointSize = 64 * 1024 * 1024;
+    private long writeBehindInterval = 0;
+    private int writeBehindMaxSize = 0;
+    
+    private long cacheMaximumSize = 0;
+    private long cacheMaximumWeight = 0;
+    private long cacheExpireAfterAccess = 0;
+    private long cacheExpireAfterWrite = 0;
+    
     public FileSystemModule() {
         this(Files.createTempDir());
     }
@@ -31,15 +64,297 @@ public class FileSystemModule extends AbstractModule {
         Preconditions.checkArgument(file.isDirectory(), file + " is not a directory!");
     }
     
+    /**
+     * Default: {@link StorageEngine#DIRECTORY}
+     *
+     * @param storageEngine
+     * @return
+     */
+    public FileSystemModule withStorageEngine(final StorageEngine storageEngine) {
+        this.storageEngine = storageEngine;
+        return this;
+    }
+    
+    /**
+     * Format of the stored objects; binary codecs are smaller and faster to encode and decode.
+     * Default: {@link Codec#JSON}
+     *
+     * @param codec
+     * @return
+     */
+    public FileSystemModule withCodec(final Codec codec) {
+        this.codec = codec;
+        return this;
+    }
+    
+    /**
+     * Default: {@link Durability#NONE}
+     *
+     * @param durability
+     * @return
+     */
+    public FileSystemModule withDurability(final Durability durability) {
+        this.durability = durability;
+        return this;
+    }
+    
+    /**
+     * Number of threads that perform parallel reads, such as {@link FileSystemManager#readAll}, and the
+     * asynchronous operations, such as {@link FileSystemManager#readAsync}.
+     * Default: twice the number of processors
+     *
+     * @param ioThreads
+     * @return
+     */
+    public FileSystemModule withIoThreads(final int ioThreads) {
+        Preconditions.checkArgument(ioThreads > 0, "io threads must be positive");
+        this.ioThreads = ioThreads;
+        return this;
+    }
+    
+    /**
+     * Number of I/O tasks that may wait for a thread. Once full, asynchronous operations fail with a
+     * {@link java.util.concurrent.RejectedExecutionException} instead of queueing without bound, while parallel
+     * reads continue on the calling thread.
+     * Default: 1024
+     *
+     * @param ioQueueCapacity
+     * @return
+     */
+    public FileSystemModule withIoQueueCapacity(final int ioQueueCapacity) {
+        Preconditions.checkArgument(ioQueueCapacity > 0, "io queue capacity must be positive");
+        this.ioQueueCapacity = ioQueueCapacity;
+        return this;
+    }
+    
+    /**
+     * Maintains a secondary index on each of the given JSON fields, queried through
+     * {@link FileSystemManager#findIds(String, Object)} and {@link FileSystemManager#findIds(String, Object, Object)}.
+     * Nested fields are separated by dots, for example "address.city".
+     *
+     * @param fields
+     * @return
+     */
+    public FileSystemModule withIndex(final String... fields) {
+        indexedFields.addAll(Arrays.asList(fields));
+        return this;
+    }
+    
+    /**
+     * Size in bytes after which a new segment is started. Only used with {@link StorageEngine#LOG_STRUCTURED}.
+     * Default: 64MB
+     *
+     * @param segmentSize
+     * @return
+     */
+    public FileSystemModule withSegmentSize(final long segmentSize) {
+        this.segmentSize = segmentSize;
+        return this;
+    }
+    
+    /**
+     * Fraction of overwritten or deleted bytes at which a segment is compacted.
+     * Only used with {@link StorageEngine#LOG_STRUCTURED}.
+     * Default: 0.5
+     *
+     * @param compactionThreshold
+     * @return
+     */
+    public FileSystemModule withCompactionThreshold(final double compactionThreshold) {
+        Preconditions.checkArgument(compactionThreshold > 0 && compactionThreshold <= 1, "compaction threshold must be in (0, 1]");
+        this.compactionThreshold = compactionThreshold;
+        return this;
+    }
+    
+    /**
+     * How often segments are checked for compaction. Only used with {@link StorageEngine#LOG_STRUCTURED}.
+     * Default: 1 minute
+     *
+     * @param duration
+     * @param unit
+     * @return
+     */
+    public FileSystemModule withCompactionInterval(final long duration, final TimeUnit unit) {
+        this.compactionInterval = unit.toMillis(duration);
+        return this;
+    }
+    
+    /**
+     * Acknowledges writes once they are appended to a write-ahead log, which is forced according to the
+     * {@link Durability}, and applies them to the object files at every checkpoint of the given interval.
+     * Sequential appends replace a random write per object on the request path. Only used with
+     * {@link StorageEngine#DIRECTORY}, since {@link StorageEngine#LOG_STRUCTURED} is a log already.
+     *
+     * @param checkpointInterval
+     * @param unit
+     * @return
+     */
+    public FileSystemModule withWriteAheadLog(final long checkpointInterval, final TimeUnit unit) {
+        Preconditions.checkArgument(checkpointInterval > 0, "checkpoint interval must be positive");
+        this.checkpointInterval = unit.toMillis(checkpointInterval);
+        return this;
+    }
+    
+    /**
+     * Size in bytes of the write-ahead log at which a checkpoint starts before the interval elapses. Writers wait
+     * for a checkpoint once the log reaches twice this size, which bounds the log and the unapplied writes held in
+     * memory. Only used with {@link #withWriteAheadLog(long, TimeUnit)}.
+     * Default: 64MB
+     *
+     * @param checkpointSize
+     * @return
+     */
+    public FileSystemModule withCheckpointSize(final long checkpointSize) {
+        Preconditions.checkArgument(checkpointSize > 0, "checkpoint size must be positive");
+        this.checkpointSize = checkpointSize;
+        return this;
+    }
+    
+    /**
+     * Buffers updates in memory, coalescing repeated updates of the same id, and writes them at the given interval
+     * or once the given number of objects is buffered. Buffered updates are visible to reads and flushed on shutdown.
+     * The interval flushes are run by {@link WriteBehindService}, which is started with the other scheduled services
+     * of the ScheduledServiceModule.
+     *
+     * @param flushInterval
+     * @param unit
+     * @param maxSize
+     * @return
+     */
+    public FileSystemModule withWriteBehind(final long flushInterval, final TimeUnit unit, final int maxSize) {
+        Preconditions.checkArgument(flushInterval > 0, "flush interval must be positive");
+        Preconditions.checkArgument(maxSize > 0, "max size must be positive");
+        this.writeBehindInterval = unit.toMillis(flushInterval);
+        this.writeBehindMaxSize = maxSize;
+        return this;
+    }
+    
+    /**
+     * Caches up to the given number of deserialized objects in memory.
+     * Cannot be combined with {@link #withCacheMaximumWeight(long)}.
+     *
+     * @param maximumSize
+     * @return
+     */
+    public FileSystemModule withCacheMaximumSize(final long maximumSize) {
+        Preconditions.checkState(cacheMaximumWeight == 0, "cache maximum weight is already set");
+        this.cacheMaximumSize = maximumSize;
+        return this;
+    }
+    
+    /**
+     * Caches deserialized objects in memory until their total serialized size reaches the given number of bytes.
+     * Cannot be combined with {@link #withCacheMaximumSize(long)}.
+     *
+     * @param maximumWeight
+     * @return
+     */
+    public FileSystemModule withCacheMaximumWeight(final long maximumWeight) {
+        Preconditions.checkState(cacheMaximumSize == 0, "cache maximum size is already set");
+        this.cacheMaximumWeight = maximumWeight;
+        return this;
+    }
+    
+    /**
+     * Evicts cached objects that have not been read for the given duration.
+     *
+     * @param duration
+     * @param unit
+     * @return
+     */
+    public FileSystemModule withCacheExpireAfterAccess(final long duration, final TimeUnit unit) {
+        this.cacheExpireAfterAccess = unit.toMillis(duration);
+        return this;
+    }
+    
+    /**
+     * Evicts cached objects the given duration after they were loaded.
+     *
+     * @param duration
+     * @param unit
+     * @return
+     */
+    public FileSystemModule withCacheExpireAfterWrite(final long duration, final TimeUnit unit) {
+        this.cacheExpireAfterWrite = unit.toMillis(duration);
+        return this;
+    }
+    
     @Override
     protected void configure() {
-        
+        bind(StoredObjectWriter.class).in(Scopes.SINGLETON);
+        if (writeBehindInterval > 0) {
+            final Provider<FileSystemManager> fileSystemManager = getProvider(FileSystemManager.class);
+            final long interval = writeBehindInterval;
+            bind(WriteBehindService.class)
+                    .toProvider((Provider<WriteBehindService>) () -> new WriteBehindService(fileSystemManager.get(), interval, TimeUnit.MILLISECONDS))
+                    .in(Scopes.SINGLETON);
+        }
     }
     
     @Singleton
     @Provides
     public FileSystemManager fileSystemManagerProvider() {
-        final ObjectMapper objectMapper = new ObjectMapper();
-        return new FileSystemManager(objectMapper, fileSystem);
+        final ObjectMapper objectMapper = codec.newObjectMapper();
+        final ExecutorService ioExecutor = new ThreadPoolExecutor(ioThreads, ioThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(ioQueueCapacity), new ThreadFactoryBuilder()
+                .setNameFormat(FileSystemManager.class.getSimpleName() + "-io-%d")
+                .setDaemon(true)
+                .build());
+        final FileSystemStore store = buildStore();
+        final SecondaryIndexes indexes = new SecondaryIndexes(fileSystem, objectMapper, indexedFields);
+        try {
+            indexes.load(store);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        
+        final FileSystemManager fileSystemManager = new FileSystemManager(codec, objectMapper, store, buildCache(), indexes, ioExecutor, ioThreads,
+                writeBehindMaxSize);
+        // after the scheduled services, so that a WriteBehindService flush never races with closing the store
+        ShutdownHooks.add(ShutdownHooks.Phase.RESOURCES, fileSystemManager::close);
+        return fileSystemManager;
+    }
+    
+    private FileSystemStore buildStore() {
+        Preconditions.checkState(checkpointInterval == 0 || storageEngine == StorageEngine.DIRECTORY,
+                "write-ahead log is only supported with " + StorageEngine.DIRECTORY);
+        try {
+            switch (storageEngine) {
+                case LOG_STRUCTURED:
+                    return new LogStructuredStore(fileSystem, durability, segmentSize, compactionThreshold, compactionInterval, TimeUnit.MILLISECONDS);
+                case DIRECTORY:
+                default:
+                    if (checkpointInterval > 0) {
+                        // the log may only be deleted once the object files are on disk
+                        return new WriteAheadLogStore(new DirectoryStore(fileSystem, Durability.PER_BATCH), fileSystem, durability,
+                                checkpointSize, checkpointInterval, TimeUnit.MILLISECONDS);
+                    }
+                    return new DirectoryStore(fileSystem, durability);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    private Cache<String, CachedObject> buildCache() {
+        if (cacheMaximumSize == 0 && cacheMaximumWeight == 0 && cacheExpireAfterAccess == 0 && cacheExpireAfterWrite == 0) {
+            return null;
+        }
+        
+        final CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder().recordStats();
+        if (cacheMaximumSize > 0) {
+            cacheBuilder.maximumSize(cacheMaximumSize);
+        }
+        if (cacheMaximumWeight > 0) {
+            cacheBuilder.maximumWeight(cacheMaximumWeight)
+                    .weigher((final String id, final CachedObject cachedObject) -> cachedObject.getWeight());
+        }
+        if (cacheExpireAfterAccess > 0) {
+            cacheBuilder.expireAfterAccess(cacheExpireAfterAccess, TimeUnit.MILLISECONDS);
+        }
+        if (cacheExpireAfterWrite > 0) {
+            cacheBuilder.expireAfterWrite(cacheExpireAfterWrite, TimeUnit.MILLISECONDS);
+        }
+        return cacheBuilder.build();
     }
 }
@@ -0,0 +1,52 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Storage engine behind {@link FileSystemManager}; stores serialized objects by id.
+ * Hidden files (starting with a dot) in the file system are never objects.
+ */
+interface FileSystemStore extends Closeable {
+
+    /**
+     * Values at least this large are memory-mapped by {@link #map(String)}; smaller ones are cheaper to copy.
+     */
+    int MAP_THRESHOLD = 64 * 1024;
+
+    void write(final String id, final byte[] bytes) throws IOException;
+
+    /**
+     * Writes all objects, forcing them to disk according to the {@link Durability} of the store.
+     */
+    void writeAll(final Map<String, byte[]> objects) throws IOException;
+
+    /**
+     * @throws java.nio.file.NoSuchFileException if nothing is stored under the id
+     */
+    byte[] read(final String id) throws IOException;
+
+    /**
+     * Returns a read-only view of the stored bytes, memory-mapped when they are large enough.
+     *
+     * @throws java.nio.file.NoSuchFileException if nothing is stored under the id
+     */
+    ByteBuffer map(final String id) throws IOException;
+
+    /**
+     * @throws java.nio.file.NoSuchFileException if nothing is stored under the id
+     */
+    void delete(final String id) throws IOException;
+
+    boolean exists(final String id);
+
+    /**
+     * Lists the ids lazily; objects written or deleted during the listing may or may not be included.
+     *
+     * @return the ids of all stored objects, to be closed after use
+     */
+    Stream<String> ids() throws IOException;
+}
@@ -0,0 +1,550 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Appends every write and delete as a record to the active segment file and keeps an in-memory index from id
+ * to the position of its latest value. Segments roll over once they reach the configured size.
+ * <p>
+ * Record layout: type (1 byte), id length (4), id, value length (4), value, CRC32 of all previous fields (4).
+ * On startup all segments are scanned in order to rebuild the index; a torn record at the end of a segment is
+ * truncated. A background task rewrites the live records of segments whose dead bytes reach the compaction
+ * threshold into the active segment and deletes them.
+ * <p>
+ * Durable writes use group commit: a writer forces the active segment only if no other writer has forced it past
+ * its record in the meantime, so concurrent writers share a single force.
+ * <p>
+ * Segments are written and forced through a {@link RandomAccessFile}, which unlike a {@link FileChannel} is not
+ * closed when the calling thread is interrupted. Reads use a positional {@link FileChannel} so readers do not
+ * contend; an interrupted reader closes only that channel, which is then reopened.
+ */
+final class LogStructuredStore implements FileSystemStore {
+
+    private static final Logger log = LoggerFactory.getLogger(LogStructuredStore.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    static final int RECORD_OVERHEAD = 1 + 4 + 4 + 4;
+
+    private static final long COMPACTOR_SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final File fileSystem;
+    private final Durability durability;
+    private final long segmentSize;
+    private final double compactionThreshold;
+
+    private final ConcurrentMap<String, Location> index;
+    private final ConcurrentNavigableMap<Long, Segment> segments;
+    private final Object writeLock;
+    private final Object syncLock;
+    private final ScheduledExecutorService compactor;
+
+    private volatile Segment activeSegment;
+    /**
+     * Total number of bytes appended since startup, guarded by the write lock.
+     */
+    private long appendedBytes;
+    /**
+     * Number of appended bytes known to be forced to disk, guarded by the sync lock.
+     */
+    private long syncedBytes;
+
+    LogStructuredStore(final File fileSystem,
+                       final Durability durability,
+                       final long segmentSize,
+                       final double compactionThreshold,
+                       final long compactionInterval,
+                       final TimeUnit unit) throws IOException {
+        this.fileSystem = fileSystem;
+        this.durability = durability;
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+        this.index = new ConcurrentHashMap<>();
+        this.segments = new ConcurrentSkipListMap<>();
+        this.writeLock = new Object();
+        this.syncLock = new Object();
+
+        recover();
+        this.activeSegment = segments.isEmpty() ? openSegment(1) : segments.lastEntry().getValue();
+
+        this.compactor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat(LogStructuredStore.class.getSimpleName() + "-compactor-%d")
+                .setDaemon(true)
+                .build());
+        this.compactor.scheduleWithFixedDelay(this::compact, compactionInterval, compactionInterval, unit);
+    }
+
+    @Override
+    public void write(final String id, final byte[] bytes) throws IOException {
+        final long appended;
+        synchronized (writeLock) {
+            appended = append(PUT, id, bytes);
+        }
+        if (durability != Durability.NONE) {
+            sync(appended);
+        }
+    }
+
+    @Override
+    public void writeAll(final Map<String, byte[]> objects) throws IOException {
+        if (durability == Durability.PER_OPERATION) {
+            for (final Map.Entry<String, byte[]> entry : objects.entrySet()) {
+                write(entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+
+        long appended = 0;
+        synchronized (writeLock) {
+            for (final Map.Entry<String, byte[]> entry : objects.entrySet()) {
+                appended = append(PUT, entry.getKey(), entry.getValue());
+            }
+        }
+        if (durability == Durability.PER_BATCH) {
+            sync(appended);
+        }
+    }
+
+    @Override
+    public byte[] read(final String id) throws IOException {
+        return read(id, (segment, location) -> segment.read(location.position, location.length));
+    }
+
+    @Override
+    public ByteBuffer map(final String id) throws IOException {
+        return read(id, (segment, location) -> {
+            if (location.length >= MAP_THRESHOLD) {
+                return segment.map(location.position, location.length);
+            }
+            return ByteBuffer.wrap(segment.read(location.position, location.length)).asReadOnlyBuffer();
+        });
+    }
+
+    private <T> T read(final String id, final SegmentReader<T> reader) throws IOException {
+        while (true) {
+            final Location location = index.get(id);
+            if (location == null) {
+                throw new NoSuchFileException(id);
+            }
+
+            try {
+                return reader.read(location.segment, location);
+            } catch (ClosedByInterruptException e) {
+                throw e;
+            } catch (ClosedChannelException e) {
+                // the segment was compacted away after the lookup; retry with the new location
+                if (index.get(id) == location) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void delete(final String id) throws IOException {
+        final long appended;
+        synchronized (writeLock) {
+            if (!index.containsKey(id)) {
+                throw new NoSuchFileException(id);
+            }
+            appended = append(DELETE, id, new byte[0]);
+        }
+        if (durability != Durability.NONE) {
+            sync(appended);
+        }
+    }
+
+    @Override
+    public boolean exists(final String id) {
+        return index.containsKey(id);
+    }
+
+    @Override
+    public Stream<String> ids() {
+        return index.keySet().stream();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // let a running compaction finish its current segment instead of interrupting it mid-append
+        compactor.shutdown();
+        try {
+            if (!compactor.awaitTermination(COMPACTOR_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Compaction of " + fileSystem + " did not finish within " + COMPACTOR_SHUTDOWN_TIMEOUT_SECONDS + " seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (writeLock) {
+            for (final Segment segment : segments.values()) {
+                segment.close();
+            }
+        }
+    }
+
+    /**
+     * Forces the active segment unless another writer already forced it past the given number of appended bytes.
+     * Segments are forced when they are rolled over, so only the active segment can hold unforced records.
+     */
+    private void sync(final long appended) throws IOException {
+        synchronized (syncLock) {
+            if (syncedBytes >= appended) {
+                return;
+            }
+
+            final long target;
+            final Segment segment;
+            synchronized (writeLock) {
+                target = appendedBytes;
+                segment = activeSegment;
+            }
+            segment.force();
+            syncedBytes = target;
+        }
+    }
+
+    /**
+     * Must be called while holding the write lock.
+     *
+     * @return the total number of bytes appended since startup, including this record
+     */
+    private long append(final byte type, final String id, final byte[] value) throws IOException {
+        final byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer record = encode(type, idBytes, value);
+        final int recordLength = record.remaining();
+
+        if (activeSegment.size > 0 && activeSegment.size + recordLength > segmentSize) {
+            // always forced, so compaction never deletes a segment whose records only live in the page cache
+            activeSegment.force();
+            activeSegment = openSegment(activeSegment.id + 1);
+        }
+
+        final Segment segment = activeSegment;
+        final long offset = segment.append(record);
+
+        final Location previous;
+        if (type == PUT) {
+            previous = index.put(id, new Location(segment, valuePosition(offset, idBytes), value.length, recordLength));
+        } else {
+            previous = index.remove(id);
+            segment.deadBytes.addAndGet(recordLength);
+        }
+        if (previous != null) {
+            previous.segment.deadBytes.addAndGet(previous.recordLength);
+        }
+
+        appendedBytes += recordLength;
+        return appendedBytes;
+    }
+
+    private void recover() throws IOException {
+        final File[] files = fileSystem.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            throw new IOException("Unable to list " + fileSystem);
+        }
+
+        final long[] ids = Arrays.stream(files)
+                .map(File::getName)
+                .mapToLong(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()), 16))
+                .sorted()
+                .toArray();
+        for (final long id : ids) {
+            final Segment segment = openSegment(id);
+            final long validSize = scan(segment, (type, recordId, value, position, recordLength) -> {
+                final Location previous;
+                if (type == PUT) {
+                    previous = index.put(recordId, new Location(segment, position, value.length, recordLength));
+                } else {
+                    previous = index.remove(recordId);
+                    segment.deadBytes.addAndGet(recordLength);
+                }
+                if (previous != null) {
+                    previous.segment.deadBytes.addAndGet(previous.recordLength);
+                }
+            });
+
+            if (validSize < segment.size) {
+                log.warn("Truncating " + (segment.size - validSize) + " bytes of incomplete records from " + segment.file);
+                segment.truncate(validSize);
+            }
+        }
+
+        log.info("Recovered " + index.size() + " objects from " + segments.size() + " segments in " + fileSystem);
+    }
+
+    private void compact() {
+        try {
+            for (final Segment segment : segments.values()) {
+                if (compactor.isShutdown()) {
+                    return;
+                }
+                if (segment != activeSegment && segment.deadBytes.get() >= segment.size * compactionThreshold) {
+                    compact(segment);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to compact " + fileSystem, e);
+        }
+    }
+
+    private void compact(final Segment segment) throws IOException {
+        final boolean hasOlderSegments = segments.firstKey() < segment.id;
+        scan(segment, (type, id, value, position, recordLength) -> {
+            synchronized (writeLock) {
+                if (type == PUT) {
+                    final Location location = index.get(id);
+                    if (location != null && location.segment == segment && location.position == position) {
+                        append(PUT, id, value);
+                    }
+                } else if (hasOlderSegments && !index.containsKey(id)) {
+                    // older segments may still hold a value for this id; keep the tombstone so it stays deleted
+                    append(DELETE, id, value);
+                }
+            }
+        });
+
+        final long appended;
+        synchronized (writeLock) {
+            appended = appendedBytes;
+        }
+        sync(appended);
+
+        synchronized (writeLock) {
+            segments.remove(segment.id);
+            segment.close();
+        }
+        Files.delete(segment.file.toPath());
+        log.info("Compacted " + segment.file);
+    }
+
+    private Segment openSegment(final long id) throws IOException {
+        final File file = new File(fileSystem, String.format("%s%016x%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        final Segment segment = new Segment(id, file);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * Visits every valid record of the segment in order.
+     *
+     * @return the size of the valid prefix of the segment
+     */
+    private static long scan(final Segment segment, final RecordVisitor visitor) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.file.toPath()), 64 * 1024))) {
+            long offset = 0;
+            while (true) {
+                final int type = input.read();
+                if (type < 0) {
+                    return offset;
+                }
+
+                final byte[] id;
+                final byte[] value;
+                try {
+                    final int idLength = input.readInt();
+                    if (type != PUT && type != DELETE || idLength < 0 || idLength > segment.size - offset) {
+                        return offset;
+                    }
+                    id = new byte[idLength];
+                    input.readFully(id);
+
+                    final int valueLength = input.readInt();
+                    if (valueLength < 0 || valueLength > segment.size - offset) {
+                        return offset;
+                    }
+                    value = new byte[valueLength];
+                    input.readFully(value);
+
+                    if (input.readInt() != checksum((byte) type, id, value)) {
+                        return offset;
+                    }
+                } catch (EOFException e) {
+                    return offset;
+                }
+
+                final int recordLength = RECORD_OVERHEAD + id.length + value.length;
+                visitor.visit((byte) type, new String(id, StandardCharsets.UTF_8), value, valuePosition(offset, id), recordLength);
+                offset += recordLength;
+            }
+        }
+    }
+
+    private static long valuePosition(final long offset, final byte[] id) {
+        return offset + 1 + 4 + id.length + 4;
+    }
+
+    static ByteBuffer encode(final byte type, final byte[] id, final byte[] value) {
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + id.length + value.length);
+        record.put(type).putInt(id.length).put(id).putInt(value.length).put(value).putInt(checksum(type, id, value));
+        record.flip();
+        return record;
+    }
+
+    static int checksum(final byte type, final byte[] id, final byte[] value) {
+        final ByteBuffer length = ByteBuffer.allocate(4);
+        final CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(length.putInt(0, id.length).array());
+        crc.update(id);
+        crc.update(length.putInt(0, value.length).array());
+        crc.update(value);
+        return (int) crc.getValue();
+    }
+
+    private interface SegmentReader<T> {
+
+        T read(final Segment segment, final Location location) throws IOException;
+    }
+
+    private interface RecordVisitor {
+
+        void visit(final byte type, final String id, final byte[] value, final long position, final int recordLength) throws IOException;
+    }
+
+    private interface ChannelReader<T> {
+
+        T read(final FileChannel channel) throws IOException;
+    }
+
+    private static final class Segment {
+
+        private final long id;
+        private final File file;
+        private final RandomAccessFile output;
+        private final AtomicLong deadBytes;
+
+        private volatile FileChannel input;
+        private volatile boolean closed;
+        private volatile long size;
+
+        private Segment(final long id, final File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.output = new RandomAccessFile(file, "rw");
+            this.input = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.deadBytes = new AtomicLong();
+            this.size = output.length();
+        }
+
+        /**
+         * Must be called while holding the write lock.
+         *
+         * @return the offset of the record in the segment
+         */
+        private long append(final ByteBuffer record) throws IOException {
+            final long offset = size;
+            output.seek(offset);
+            output.write(record.array(), record.arrayOffset() + record.position(), record.remaining());
+            size = offset + record.remaining();
+            return offset;
+        }
+
+        private void force() throws IOException {
+            output.getFD().sync();
+        }
+
+        private void truncate(final long length) throws IOException {
+            output.setLength(length);
+            size = length;
+        }
+
+        private byte[] read(final long position, final int length) throws IOException {
+            return withInput(channel -> {
+                final ByteBuffer buffer = ByteBuffer.allocate(length);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new EOFException(file + " ended before position " + (position + length));
+                    }
+                }
+                return buffer.array();
+            });
+        }
+
+        private ByteBuffer map(final long position, final int length) throws IOException {
+            return withInput(channel -> channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+        }
+
+        /**
+         * Reopens the input channel when another reader closed it by being interrupted. The interrupted reader
+         * itself gets the {@link ClosedByInterruptException}.
+         */
+        private <T> T withInput(final ChannelReader<T> reader) throws IOException {
+            while (true) {
+                final FileChannel channel = input;
+                try {
+                    return reader.read(channel);
+                } catch (ClosedByInterruptException e) {
+                    reopen(channel);
+                    throw e;
+                } catch (ClosedChannelException e) {
+                    if (closed) {
+                        throw e;
+                    }
+                    reopen(channel);
+                }
+            }
+        }
+
+        private synchronized void reopen(final FileChannel channel) throws IOException {
+            if (!closed && input == channel) {
+                input = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            }
+        }
+
+        private synchronized void close() throws IOException {
+            closed = true;
+            try {
+                input.close();
+            } finally {
+                output.close();
+            }
+        }
+    }
+
+    private static final class Location {
+
+        private final Segment segment;
+        private final long position;
+        private final int length;
+        private final int recordLength;
+
+        private Location(final Segment segment, final long position, final int length, final int recordLength) {
+            this.segment = segment;
+            this.position = position;
+            this.length = length;
+            this.recordLength = recordLength;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+import java.util.Map;
+
+/**
+ * One page of objects in id order, as returned by {@link FileSystemManager#scanPage(Class, String, int)}.
+ */
+public final class Page<T> {
+
+    private final Map<String, T> objects;
+    private final String cursor;
+
+    Page(final Map<String, T> objects, final String cursor) {
+        this.objects = objects;
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return the objects by id, in id order
+     */
+    public Map<String, T> getObjects() {
+        return objects;
+    }
+
+    /**
+     * @return the cursor of the next page, or null if this is the last page
+     */
+    public String getCursor() {
+        return cursor;
+    }
+}
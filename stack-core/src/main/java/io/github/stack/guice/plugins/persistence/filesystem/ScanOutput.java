@@ -0,0 +1,53 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Writes a scan as one JSON object from id to object, consuming the stream while the response is written:
+ * <pre>
+ * {@literal @}GET
+ * {@literal @}Produces(MediaType.APPLICATION_JSON)
+ * public StreamingOutput getAll() {
+ *     return new ScanOutput(fileSystemManager.scan(Pojo.class));
+ * }
+ * </pre>
+ * The response has no Content-Length and is sent in chunks as the output buffer fills, so its size does not
+ * depend on the number of objects. The stream is closed once written. If the scan fails, the JSON is left
+ * unterminated so the client cannot mistake the partial response for a complete one.
+ */
+public final class ScanOutput implements StreamingOutput {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false)
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT, false)
+            .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    private final Stream<? extends Map.Entry<String, ?>> entries;
+
+    public ScanOutput(final Stream<? extends Map.Entry<String, ?>> entries) {
+        this.entries = entries;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        try (Stream<? extends Map.Entry<String, ?>> scan = entries;
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+            generator.writeStartObject();
+            for (final Iterator<? extends Map.Entry<String, ?>> iterator = scan.iterator(); iterator.hasNext(); ) {
+                final Map.Entry<String, ?> entry = iterator.next();
+                generator.writeFieldName(entry.getKey());
+                objectMapper.writeValue(generator, entry.getValue());
+            }
+            generator.writeEndObject();
+        }
+    }
+}
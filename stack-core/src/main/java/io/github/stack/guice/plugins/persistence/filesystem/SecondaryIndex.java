@@ -0,0 +1,147 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Sorted index of one JSON field, from field value to the ids of the objects that hold it.
+ * <p>
+ * Numbers are ordered numerically; dates are numbers as well, since Jackson writes them as epoch milliseconds by
+ * default. Every other scalar is ordered as text. Objects without the field, or with a non-scalar value, are not
+ * indexed. Lookups are lock free; changes are serialized per index.
+ */
+final class SecondaryIndex {
+
+    private final String field;
+    private final String[] path;
+
+    private final ConcurrentNavigableMap<BigDecimal, Set<String>> numbers;
+    private final ConcurrentNavigableMap<String, Set<String>> texts;
+    private final ConcurrentMap<String, JsonNode> values;
+
+    /**
+     * @param field property name, with nested properties separated by dots
+     */
+    SecondaryIndex(final String field) {
+        this.field = field;
+        this.path = field.split("\\.");
+        this.numbers = new ConcurrentSkipListMap<>();
+        this.texts = new ConcurrentSkipListMap<>();
+        this.values = new ConcurrentHashMap<>();
+    }
+
+    String getField() {
+        return field;
+    }
+
+    /**
+     * @return the indexed value of every id
+     */
+    Map<String, JsonNode> getValues() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    synchronized void put(final String id, final JsonNode document) {
+        JsonNode value = document;
+        for (final String property : path) {
+            value = value.path(property);
+        }
+        putValue(id, value);
+    }
+
+    synchronized void putValue(final String id, final JsonNode value) {
+        remove(id);
+        if (!value.isValueNode() || value.isNull()) {
+            return;
+        }
+
+        values.put(id, value);
+        if (value.isNumber()) {
+            numbers.computeIfAbsent(value.decimalValue(), key -> ConcurrentHashMap.newKeySet()).add(id);
+        } else {
+            texts.computeIfAbsent(value.asText(), key -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    synchronized void remove(final String id) {
+        final JsonNode value = values.remove(id);
+        if (value == null) {
+            return;
+        }
+
+        if (value.isNumber()) {
+            removeId(numbers, value.decimalValue(), id);
+        } else {
+            removeId(texts, value.asText(), id);
+        }
+    }
+
+    Set<String> equal(final Object value) {
+        final Set<String> ids = isNumeric(value) ? numbers.get(toNumber(value)) : texts.get(value.toString());
+        return ids == null ? Collections.emptySet() : new LinkedHashSet<>(ids);
+    }
+
+    /**
+     * @param from inclusive lower bound, or null for none
+     * @param to   inclusive upper bound, or null for none
+     * @return ids ordered by field value
+     */
+    Set<String> range(final Object from, final Object to) {
+        final Object bound = from != null ? from : to;
+        if (bound == null) {
+            throw new IllegalArgumentException("At least one bound is required");
+        }
+
+        if (isNumeric(bound)) {
+            return collect(subMap(numbers, from == null ? null : toNumber(from), to == null ? null : toNumber(to)));
+        }
+        return collect(subMap(texts, from == null ? null : from.toString(), to == null ? null : to.toString()));
+    }
+
+    private static boolean isNumeric(final Object value) {
+        return value instanceof Number || value instanceof java.util.Date;
+    }
+
+    private static BigDecimal toNumber(final Object value) {
+        if (value instanceof java.util.Date) {
+            return BigDecimal.valueOf(((java.util.Date) value).getTime());
+        }
+        return new BigDecimal(value.toString());
+    }
+
+    private static <K> NavigableMap<K, Set<String>> subMap(final ConcurrentNavigableMap<K, Set<String>> map, final K from, final K to) {
+        if (from == null) {
+            return map.headMap(to, true);
+        }
+        if (to == null) {
+            return map.tailMap(from, true);
+        }
+        return map.subMap(from, true, to, true);
+    }
+
+    private static Set<String> collect(final NavigableMap<?, Set<String>> map) {
+        final Set<String> ids = new LinkedHashSet<>();
+        map.values().forEach(ids::addAll);
+        return ids;
+    }
+
+    private static <K> void removeId(final ConcurrentMap<K, Set<String>> map, final K key, final String id) {
+        final Set<String> ids = map.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+}
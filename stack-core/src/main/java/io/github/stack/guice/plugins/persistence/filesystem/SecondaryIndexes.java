@@ -0,0 +1,111 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The {@link SecondaryIndex}es of a {@link FileSystemManager}, persisted in the hidden {@code .indexes} directory
+ * of the file system.
+ * <p>
+ * Snapshots are written on close together with a marker. On startup the snapshots are loaded only if the marker is
+ * present, and the marker is removed while running; after a crash the indexes are rebuilt from the stored objects.
+ */
+final class SecondaryIndexes {
+
+    private static final Logger log = LoggerFactory.getLogger(SecondaryIndexes.class);
+
+    private static final String INDEX_DIRECTORY = ".indexes";
+    private static final String CLEAN_MARKER = "clean";
+    private static final String SNAPSHOT_SUFFIX = ".json";
+
+    private final File directory;
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper snapshotMapper;
+    private final Map<String, SecondaryIndex> indexes;
+
+    /**
+     * @param objectMapper reads the stored objects when the indexes are rebuilt
+     */
+    SecondaryIndexes(final File fileSystem, final ObjectMapper objectMapper, final Collection<String> fields) {
+        this.directory = new File(fileSystem, INDEX_DIRECTORY);
+        this.objectMapper = objectMapper;
+        this.snapshotMapper = new ObjectMapper();
+        this.indexes = new LinkedHashMap<>();
+        fields.forEach(field -> indexes.put(field, new SecondaryIndex(field)));
+    }
+
+    boolean isEmpty() {
+        return indexes.isEmpty();
+    }
+
+    SecondaryIndex get(final String field) {
+        final SecondaryIndex index = indexes.get(field);
+        Preconditions.checkArgument(index != null, "No index on " + field);
+        return index;
+    }
+
+    void put(final String id, final JsonNode document) {
+        indexes.values().forEach(index -> index.put(id, document));
+    }
+
+    void remove(final String id) {
+        indexes.values().forEach(index -> index.remove(id));
+    }
+
+    /**
+     * Loads the snapshots written by a clean shutdown, or rebuilds the indexes from the stored objects.
+     */
+    void load(final FileSystemStore store) throws IOException {
+        if (indexes.isEmpty()) {
+            return;
+        }
+
+        final File marker = new File(directory, CLEAN_MARKER);
+        if (marker.exists() && indexes.keySet().stream().allMatch(field -> snapshot(field).exists())) {
+            for (final SecondaryIndex index : indexes.values()) {
+                final Map<String, JsonNode> values = snapshotMapper.readValue(snapshot(index.getField()), new TypeReference<Map<String, JsonNode>>() {
+                });
+                values.forEach(index::putValue);
+            }
+            log.info("Loaded indexes " + indexes.keySet() + " from " + directory);
+        } else {
+            try (Stream<String> ids = store.ids()) {
+                for (final Iterator<String> iterator = ids.iterator(); iterator.hasNext(); ) {
+                    final String id = iterator.next();
+                    put(id, objectMapper.readTree(store.read(id)));
+                }
+            }
+            log.info("Rebuilt indexes " + indexes.keySet() + " from the stored objects");
+        }
+        Files.deleteIfExists(marker.toPath());
+    }
+
+    void save() throws IOException {
+        if (indexes.isEmpty()) {
+            return;
+        }
+
+        Files.createDirectories(directory.toPath());
+        for (final SecondaryIndex index : indexes.values()) {
+            snapshotMapper.writeValue(snapshot(index.getField()), index.getValues());
+        }
+        Files.write(new File(directory, CLEAN_MARKER).toPath(), new byte[0]);
+    }
+
+    private File snapshot(final String field) {
+        return new File(directory, field + SNAPSHOT_SUFFIX);
+    }
+}
@@ -0,0 +1,15 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+public enum StorageEngine {
+
+    /**
+     * One file per object, named after its id.
+     */
+    DIRECTORY,
+
+    /**
+     * Objects are appended to segment files and located through an in-memory index that is rebuilt on startup.
+     * Segments that are mostly overwritten or deleted records are compacted in the background.
+     */
+    LOG_STRUCTURED
+}
@@ -0,0 +1,55 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The serialized form of a stored object, as returned by {@link FileSystemManager#readRaw(String)}.
+ * Resources can return it as is; {@link StoredObjectWriter} writes it with a Content-Length.
+ */
+public final class StoredObject implements StreamingOutput {
+
+    private final ByteBuffer buffer;
+    private final String mediaType;
+
+    StoredObject(final ByteBuffer buffer, final String mediaType) {
+        this.buffer = buffer;
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * @return the media type of the configured {@link Codec}
+     */
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public int getLength() {
+        return buffer.remaining();
+    }
+
+    /**
+     * @return a read-only view of the stored bytes
+     */
+    public ByteBuffer asByteBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        if (buffer.hasArray()) {
+            output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+
+        final ByteBuffer content = asByteBuffer();
+        final WritableByteChannel channel = Channels.newChannel(output);
+        while (content.hasRemaining()) {
+            channel.write(content);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Writes a {@link StoredObject} with a Content-Length. The bytes go through the entity stream like any other
+ * entity, so servlet filters and compression see them; mapped files are streamed in chunks rather than copied
+ * into one heap array.
+ */
+@Provider
+@Produces({MediaType.APPLICATION_JSON, "application/x-jackson-smile", "application/cbor"})
+public class StoredObjectWriter implements MessageBodyWriter<StoredObject> {
+
+    @Override
+    public boolean isWriteable(final Class<?> type, final Type genericType, final Annotation[] annotations, final MediaType mediaType) {
+        return StoredObject.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(final StoredObject storedObject, final Class<?> type, final Type genericType, final Annotation[] annotations, final MediaType mediaType) {
+        return storedObject.getLength();
+    }
+
+    @Override
+    public void writeTo(final StoredObject storedObject,
+                        final Class<?> type,
+                        final Type genericType,
+                        final Annotation[] annotations,
+                        final MediaType mediaType,
+                        final MultivaluedMap<String, Object> httpHeaders,
+                        final OutputStream entityStream) throws IOException, WebApplicationException {
+        storedObject.write(entityStream);
+    }
+}
@@ -0,0 +1,27 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+/**
+ * An object together with the version it was read at, as returned by
+ * {@link FileSystemManager#readVersioned(String, Class)}.
+ */
+public final class Versioned<T> {
+
+    private final T object;
+    private final long version;
+
+    Versioned(final T object, final long version) {
+        this.object = object;
+        this.version = version;
+    }
+
+    public T getObject() {
+        return object;
+    }
+
+    /**
+     * @return the version to pass to {@link FileSystemManager#compareAndSet(String, long, Object)}
+     */
+    public long getVersion() {
+        return version;
+    }
+}
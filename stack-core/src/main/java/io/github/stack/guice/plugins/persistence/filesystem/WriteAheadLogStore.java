@@ -0,0 +1,438 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static io.github.stack.guice.plugins.persistence.filesystem.LogStructuredStore.DELETE;
+import static io.github.stack.guice.plugins.persistence.filesystem.LogStructuredStore.PUT;
+import static io.github.stack.guice.plugins.persistence.filesystem.LogStructuredStore.RECORD_OVERHEAD;
+
+/**
+ * Acknowledges writes and deletes once they are appended to a sequential log in the hidden {@code .wal} directory,
+ * and applies them to the object store in the background.
+ * <p>
+ * Until a mutation is applied it is served from memory, so readers always see the latest write. A checkpoint rolls
+ * the log over, applies every pending mutation to the object store, forces it and then deletes the logs it covered.
+ * On startup the remaining logs are replayed into the object store; a torn record at the end of a log is ignored.
+ * Logs use the record layout of {@link LogStructuredStore} and the same group commit.
+ * <p>
+ * Checkpoints run at a fixed interval and early, in the background, once the active log reaches the checkpoint
+ * size. If it reaches twice that size while the background checkpoint is behind, writers run the checkpoint
+ * themselves, so the logs and the pending mutations held in memory stay within about four times the checkpoint size.
+ */
+final class WriteAheadLogStore implements FileSystemStore {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLogStore.class);
+
+    private static final String LOG_DIRECTORY = ".wal";
+    private static final String LOG_PREFIX = "wal-";
+    private static final String LOG_SUFFIX = ".log";
+
+    private final FileSystemStore objectStore;
+    private final File directory;
+    private final Durability durability;
+    private final long checkpointSize;
+
+    private final ConcurrentMap<String, Mutation> pending;
+    private final Object writeLock;
+    private final Object syncLock;
+    private final Object checkpointLock;
+    private final ScheduledExecutorService checkpointer;
+    private final AtomicBoolean checkpointRequested;
+
+    /**
+     * Guarded by the write lock.
+     */
+    private long logId;
+    private FileChannel logChannel;
+    private long logSize;
+    private long appendedBytes;
+    /**
+     * Guarded by the sync lock.
+     */
+    private long syncedBytes;
+
+    /**
+     * @param objectStore must force its writes, since logs are deleted once they are applied to it
+     * @param checkpointSize size in bytes of the active log that triggers a checkpoint before the interval elapses
+     */
+    WriteAheadLogStore(final FileSystemStore objectStore,
+                       final File fileSystem,
+                       final Durability durability,
+                       final long checkpointSize,
+                       final long checkpointInterval,
+                       final TimeUnit unit) throws IOException {
+        this.objectStore = objectStore;
+        this.directory = new File(fileSystem, LOG_DIRECTORY);
+        this.durability = durability;
+        this.checkpointSize = checkpointSize;
+        this.pending = new ConcurrentHashMap<>();
+        this.writeLock = new Object();
+        this.syncLock = new Object();
+        this.checkpointLock = new Object();
+
+        Files.createDirectories(directory.toPath());
+        this.logId = replay() + 1;
+        this.logChannel = openLog(logId);
+
+        this.checkpointer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat(WriteAheadLogStore.class.getSimpleName() + "-checkpointer-%d")
+                .setDaemon(true)
+                .build());
+        this.checkpointRequested = new AtomicBoolean();
+        this.checkpointer.scheduleWithFixedDelay(this::checkpoint, checkpointInterval, checkpointInterval, unit);
+    }
+
+    @Override
+    public void write(final String id, final byte[] bytes) throws IOException {
+        final long appended;
+        final long size;
+        synchronized (writeLock) {
+            appended = append(PUT, id, bytes);
+            size = logSize;
+        }
+        if (durability != Durability.NONE) {
+            sync(appended);
+        }
+        checkpointIfFull(size);
+    }
+
+    @Override
+    public void writeAll(final Map<String, byte[]> objects) throws IOException {
+        if (durability == Durability.PER_OPERATION) {
+            for (final Map.Entry<String, byte[]> entry : objects.entrySet()) {
+                write(entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+
+        long appended = 0;
+        final long size;
+        synchronized (writeLock) {
+            for (final Map.Entry<String, byte[]> entry : objects.entrySet()) {
+                appended = append(PUT, entry.getKey(), entry.getValue());
+            }
+            size = logSize;
+        }
+        if (durability == Durability.PER_BATCH) {
+            sync(appended);
+        }
+        checkpointIfFull(size);
+    }
+
+    @Override
+    public byte[] read(final String id) throws IOException {
+        final Mutation mutation = pending.get(id);
+        if (mutation == null) {
+            return objectStore.read(id);
+        }
+        if (mutation.value == null) {
+            throw new NoSuchFileException(id);
+        }
+        return mutation.value;
+    }
+
+    @Override
+    public ByteBuffer map(final String id) throws IOException {
+        final Mutation mutation = pending.get(id);
+        if (mutation == null) {
+            return objectStore.map(id);
+        }
+        if (mutation.value == null) {
+            throw new NoSuchFileException(id);
+        }
+        return ByteBuffer.wrap(mutation.value).asReadOnlyBuffer();
+    }
+
+    @Override
+    public void delete(final String id) throws IOException {
+        final long appended;
+        final long size;
+        synchronized (writeLock) {
+            if (!exists(id)) {
+                throw new NoSuchFileException(id);
+            }
+            appended = append(DELETE, id, null);
+            size = logSize;
+        }
+        if (durability != Durability.NONE) {
+            sync(appended);
+        }
+        checkpointIfFull(size);
+    }
+
+    @Override
+    public boolean exists(final String id) {
+        final Mutation mutation = pending.get(id);
+        return mutation == null ? objectStore.exists(id) : mutation.value != null;
+    }
+
+    @Override
+    public Stream<String> ids() throws IOException {
+        // the pending ids are taken first, so a mutation that is applied during the listing is not missed
+        final Map<String, Mutation> mutations = new HashMap<>(pending);
+        final Stream<String> unapplied = mutations.entrySet().stream()
+                .filter(entry -> entry.getValue().value != null)
+                .map(Map.Entry::getKey);
+        return Stream.concat(unapplied, objectStore.ids().filter(id -> !mutations.containsKey(id)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        checkpointer.shutdown();
+        try {
+            checkpointer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        checkpoint();
+        synchronized (writeLock) {
+            logChannel.close();
+        }
+        objectStore.close();
+    }
+
+    /**
+     * Requests a background checkpoint once the active log reaches the checkpoint size, and runs one on the calling
+     * thread once it reaches twice that size, which also waits for a checkpoint that is already running.
+     *
+     * @param size the size of the active log after the caller's append
+     */
+    private void checkpointIfFull(final long size) {
+        if (size >= 2 * checkpointSize) {
+            checkpoint();
+        } else if (size >= checkpointSize && checkpointRequested.compareAndSet(false, true)) {
+            try {
+                checkpointer.execute(() -> {
+                    checkpointRequested.set(false);
+                    checkpoint();
+                });
+            } catch (RejectedExecutionException e) {
+                // closing, which checkpoints anyway
+                checkpointRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Applies the pending mutations to the object store and deletes the logs that hold them.
+     */
+    private void checkpoint() {
+        synchronized (checkpointLock) {
+            try {
+                final Map<String, Mutation> mutations;
+                final long checkpointedLogId;
+                synchronized (writeLock) {
+                    if (logSize == 0) {
+                        return;
+                    }
+
+                    // every mutation in the rolled over logs is pending now, or was superseded by one that is
+                    logChannel.force(false);
+                    logChannel.close();
+                    checkpointedLogId = logId;
+                    logChannel = openLog(++logId);
+                    logSize = 0;
+                    mutations = new HashMap<>(pending);
+                }
+
+                apply(mutations);
+                mutations.forEach(pending::remove);
+                deleteLogs(checkpointedLogId);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to checkpoint " + directory, e);
+            }
+        }
+    }
+
+    private void apply(final Map<String, Mutation> mutations) throws IOException {
+        final Map<String, byte[]> objects = new LinkedHashMap<>();
+        for (final Map.Entry<String, Mutation> entry : mutations.entrySet()) {
+            if (entry.getValue().value != null) {
+                objects.put(entry.getKey(), entry.getValue().value);
+            } else if (objectStore.exists(entry.getKey())) {
+                objectStore.delete(entry.getKey());
+            }
+        }
+        if (!objects.isEmpty()) {
+            objectStore.writeAll(objects);
+        }
+    }
+
+    /**
+     * Applies the logs left behind by a crash and deletes them.
+     *
+     * @return the id of the last log
+     */
+    private long replay() throws IOException {
+        final File[] files = directory.listFiles((dir, name) -> name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX));
+        if (files == null) {
+            throw new IOException("Unable to list " + directory);
+        }
+
+        final long[] ids = Arrays.stream(files)
+                .map(File::getName)
+                .mapToLong(name -> Long.parseLong(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length()), 16))
+                .sorted()
+                .toArray();
+        if (ids.length == 0) {
+            return 0;
+        }
+
+        final Map<String, Mutation> mutations = new LinkedHashMap<>();
+        for (final long id : ids) {
+            scan(logFile(id), mutations);
+        }
+        apply(mutations);
+        deleteLogs(ids[ids.length - 1]);
+
+        log.info("Replayed " + mutations.size() + " mutations from " + ids.length + " logs in " + directory);
+        return ids[ids.length - 1];
+    }
+
+    /**
+     * Deletes the logs up to and including the given one.
+     */
+    private void deleteLogs(final long lastId) throws IOException {
+        for (long id = lastId; ; id--) {
+            if (!Files.deleteIfExists(logFile(id).toPath())) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Forces the active log unless another writer already forced it past the given number of appended bytes.
+     * Logs are forced when they are rolled over, so only the active log can hold unforced records.
+     */
+    private void sync(final long appended) throws IOException {
+        synchronized (syncLock) {
+            if (syncedBytes >= appended) {
+                return;
+            }
+
+            final long target;
+            final FileChannel channel;
+            synchronized (writeLock) {
+                target = appendedBytes;
+                channel = logChannel;
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // rolled over by a checkpoint, which forced it
+            }
+            syncedBytes = target;
+        }
+    }
+
+    /**
+     * Must be called while holding the write lock.
+     *
+     * @param value null for a delete
+     * @return the total number of bytes appended since startup, including this record
+     */
+    private long append(final byte type, final String id, final byte[] value) throws IOException {
+        final ByteBuffer record = LogStructuredStore.encode(type, id.getBytes(StandardCharsets.UTF_8), value == null ? new byte[0] : value);
+        final int recordLength = record.remaining();
+        while (record.hasRemaining()) {
+            logSize += logChannel.write(record, logSize);
+        }
+        pending.put(id, new Mutation(value));
+
+        appendedBytes += recordLength;
+        return appendedBytes;
+    }
+
+    private FileChannel openLog(final long id) throws IOException {
+        return FileChannel.open(logFile(id).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private File logFile(final long id) {
+        return new File(directory, String.format("%s%016x%s", LOG_PREFIX, id, LOG_SUFFIX));
+    }
+
+    /**
+     * Collects the latest mutation of every id in the log, up to the first incomplete record.
+     */
+    private static void scan(final File file, final Map<String, Mutation> mutations) throws IOException {
+        final long size = file.length();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()), 64 * 1024))) {
+            long offset = 0;
+            while (true) {
+                final int type = input.read();
+                if (type < 0) {
+                    return;
+                }
+
+                final byte[] id;
+                final byte[] value;
+                try {
+                    final int idLength = input.readInt();
+                    if (type != PUT && type != DELETE || idLength < 0 || idLength > size - offset) {
+                        break;
+                    }
+                    id = new byte[idLength];
+                    input.readFully(id);
+
+                    final int valueLength = input.readInt();
+                    if (valueLength < 0 || valueLength > size - offset) {
+                        break;
+                    }
+                    value = new byte[valueLength];
+                    input.readFully(value);
+
+                    if (input.readInt() != LogStructuredStore.checksum((byte) type, id, value)) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+
+                final String recordId = new String(id, StandardCharsets.UTF_8);
+                mutations.remove(recordId);
+                mutations.put(recordId, new Mutation(type == PUT ? value : null));
+                offset += RECORD_OVERHEAD + id.length + value.length;
+            }
+            log.warn("Ignoring incomplete records at the end of " + file);
+        }
+    }
+
+    private static final class Mutation {
+
+        /**
+         * Null for a delete.
+         */
+        private final byte[] value;
+
+        private Mutation(final byte[] value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+import io.github.stack.guice.plugins.services.scheduledservice.AbstractScheduledService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flushes the updates buffered by {@link FileSystemModule#withWriteBehind(long, TimeUnit, int)} at a fixed interval.
+ */
+public class WriteBehindService extends AbstractScheduledService {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindService.class);
+
+    private final FileSystemManager fileSystemManager;
+    private final long interval;
+    private final TimeUnit unit;
+
+    WriteBehindService(final FileSystemManager fileSystemManager, final long interval, final TimeUnit unit) {
+        this.fileSystemManager = fileSystemManager;
+        this.interval = interval;
+        this.unit = unit;
+    }
+
+    @Override
+    public void runOneIteration() {
+        try {
+            fileSystemManager.flush();
+        } catch (RuntimeException e) {
+            // a failed iteration would terminate the service; the buffered updates are retried next time
+            log.warn("Failed to flush buffered updates", e);
+        }
+    }
+
+    @Override
+    public com.google.common.util.concurrent.AbstractScheduledService.Scheduler scheduler() {
+        return com.google.common.util.concurrent.AbstractScheduledService.Scheduler.newFixedDelaySchedule(interval, interval, unit);
+    }
+}
@@ -1,11 +1,50 @@
 package io.github.stack.guice.plugins.services.scheduledservice;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 public abstract class AbstractScheduledService {
 
-    private com.google.common.util.concurrent.AbstractScheduledService service = service();
+    private static final Logger log = LoggerFactory.getLogger(AbstractScheduledService.class);
+
+    private volatile ScheduledExecutorService executor;
+    private volatile Semaphore permits = new Semaphore(1);
+    private volatile ServiceMetrics metrics = new ServiceMetrics(100);
+
+    // when the current scheduled iteration was due and the period of the schedule, in nanoseconds
+    private volatile long dueAt;
+    private volatile long period;
+    private volatile AdaptiveScheduler adaptiveScheduler;
 
-    public final void start() {
-        service = service();
+    // whether a run-once is waiting for the running iteration to finish
+    private final AtomicBoolean triggered = new AtomicBoolean();
+
+    private volatile com.google.common.util.concurrent.AbstractScheduledService service = service();
+
+    /**
+     * Starts the service unless it is already starting or running.
+     */
+    public final synchronized void start() {
+        switch (service.state()) {
+            case NEW:
+                break;
+            case TERMINATED:
+            case FAILED:
+                service = service();
+                break;
+            default:
+                return;
+        }
         service.startAsync();
     }
 
@@ -21,10 +60,156 @@ public abstract class AbstractScheduledService {
         return service.failureCause();
     }
 
-    public final void stop() {
+    public final synchronized void stop() {
         service.stopAsync();
     }
 
+    /**
+     * @param timeout
+     * @param unit
+     * @throws TimeoutException if the service is not running within the timeout
+     * @throws IllegalStateException if the service failed or stopped instead
+     */
+    public final void awaitRunning(final long timeout, final TimeUnit unit) throws TimeoutException {
+        service.awaitRunning(timeout, unit);
+    }
+
+    /**
+     * Waits for the running iteration, if any, to finish after {@link #stop()}.
+     *
+     * @param timeout
+     * @param unit
+     * @throws TimeoutException if the service is not terminated within the timeout
+     * @throws IllegalStateException if the service failed
+     */
+    public final void awaitTerminated(final long timeout, final TimeUnit unit) throws TimeoutException {
+        service.awaitTerminated(timeout, unit);
+    }
+
+    /**
+     * Runs on the given executor, shared with other services, instead of a thread of its own. Takes effect on the
+     * next start.
+     *
+     * @param executor
+     */
+    final void setExecutor(final ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param maxConcurrency number of iterations that may run at the same time
+     */
+    final void setMaxConcurrency(final int maxConcurrency) {
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * Discards the recorded runs.
+     *
+     * @param runHistorySize number of recent runs to keep
+     */
+    final void setRunHistorySize(final int runHistorySize) {
+        this.metrics = new ServiceMetrics(runHistorySize);
+    }
+
+    public final ServiceStatistics statistics() {
+        return metrics.statistics();
+    }
+
+    /**
+     * @return the most recent runs, newest first
+     */
+    public final List<ServiceRun> recentRuns() {
+        return metrics.recentRuns();
+    }
+
+    /**
+     * Runs one iteration in the background as soon as no other iteration is running. Triggers that arrive while one
+     * is already waiting are merged into it.
+     */
+    final void trigger() {
+        if (triggered.compareAndSet(false, true)) {
+            submitTriggered();
+        }
+    }
+
+    /**
+     * Called by {@link TimedScheduledExecutor} right before a scheduled iteration.
+     */
+    final void due(final long dueAt, final long period) {
+        this.dueAt = dueAt;
+        this.period = period;
+    }
+
+    private void submitTriggered() {
+        final Executor triggerExecutor = executor != null ? executor : ForkJoinPool.commonPool();
+        try {
+            triggerExecutor.execute(this::runTriggered);
+        } catch (final RejectedExecutionException e) {
+            triggered.set(false);
+            log.warn("Could not run " + getClass().getSimpleName() + " once", e);
+        }
+    }
+
+    private void runTriggered() {
+        final Semaphore semaphore = permits;
+        if (!triggered.get() || !semaphore.tryAcquire()) {
+            // the running iteration submits again when it finishes
+            return;
+        }
+        if (!triggered.compareAndSet(true, false)) {
+            semaphore.release();
+            return;
+        }
+
+        try {
+            run(semaphore, false);
+        } catch (final RuntimeException e) {
+            log.warn("Run once of " + getClass().getSimpleName() + " failed", e);
+        }
+    }
+
+    /**
+     * Runs one scheduled iteration unless as many as allowed are running already, so a slow service cannot occupy
+     * more than its share of a shared executor.
+     */
+    private void runScheduled() {
+        final Semaphore semaphore = permits;
+        if (!semaphore.tryAcquire()) {
+            metrics.skipped();
+            return;
+        }
+        run(semaphore, true);
+    }
+
+    /**
+     * Runs one iteration with a permit of the given semaphore, which it releases.
+     */
+    private void run(final Semaphore semaphore, final boolean scheduled) {
+        final ServiceMetrics serviceMetrics = metrics;
+        final AdaptiveScheduler adaptive = adaptiveScheduler;
+        final long startedAt = System.currentTimeMillis();
+        final long start = System.nanoTime();
+        Throwable failure = null;
+        try {
+            runOneIteration();
+        } catch (final RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            final long duration = System.nanoTime() - start;
+            semaphore.release();
+            if (scheduled && adaptive != null) {
+                adaptive.completed(duration, failure != null);
+            }
+            serviceMetrics.record(startedAt, scheduled, start - dueAt, duration,
+                    !scheduled ? 0 : adaptive != null ? adaptive.getPeriod() : period, failure);
+            if (triggered.get()) {
+                submitTriggered();
+            }
+        }
+    }
+
     private com.google.common.util.concurrent.AbstractScheduledService service() {
         final AbstractScheduledService me = this;
         return new com.google.common.util.concurrent.AbstractScheduledService() {
@@ -32,17 +217,64 @@ public abstract class AbstractScheduledService {
             @Override
             protected void runOneIteration() throws Exception {
                 if (service != null && service.state() == State.RUNNING) {
-                    me.runOneIteration();
+                    if (me.adaptiveScheduler == null) {
+                        me.runScheduled();
+                        return;
+                    }
+
+                    try {
+                        me.runScheduled();
+                    } catch (final RuntimeException e) {
+                        log.warn("Iteration of " + me.getClass().getSimpleName() + " failed", e);
+                    }
                 }
             }
 
+            @Override
+            protected void startUp() throws Exception {
+                me.startUp();
+            }
+
+            @Override
+            protected void shutDown() throws Exception {
+                me.shutDown();
+            }
+
+            @Override
+            protected ScheduledExecutorService executor() {
+                return new TimedScheduledExecutor(me.executor != null ? me.executor : super.executor(), me);
+            }
+
             @Override
             protected Scheduler scheduler() {
-                return me.scheduler();
+                final Scheduler scheduler = me.scheduler();
+                if (scheduler instanceof AdaptiveScheduler) {
+                    me.adaptiveScheduler = (AdaptiveScheduler) scheduler;
+                    me.adaptiveScheduler.reset();
+                } else {
+                    me.adaptiveScheduler = null;
+                }
+                return scheduler;
             }
         };
     }
 
+    /**
+     * Runs on the executor of the service before the first iteration; the service is running once it returns.
+     *
+     * @throws Exception to fail the service
+     */
+    protected void startUp() throws Exception {
+    }
+
+    /**
+     * Runs on the executor of the service after the last iteration; the service is terminated once it returns.
+     *
+     * @throws Exception to fail the service
+     */
+    protected void shutDown() throws Exception {
+    }
+
     public abstract void runOneIteration();
 
     public abstract com.google.common.util.concurrent.AbstractScheduledService.Scheduler scheduler();
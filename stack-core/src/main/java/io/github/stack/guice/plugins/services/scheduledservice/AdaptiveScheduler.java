@@ -0,0 +1,147 @@
+package io.github.stack.guice.plugins.services.scheduledservice;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.AbstractScheduledService.CustomScheduler;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A scheduler for {@link AbstractScheduledService#scheduler()} that adapts to how iterations went:
+ * <ul>
+ * <li>iterations start every period, measured from start to start;</li>
+ * <li>an iteration that overruns the period is followed by a pause as long as itself;</li>
+ * <li>after failures the delay doubles per consecutive failure;</li>
+ * <li>every delay is randomly stretched or shortened by the jitter so that services with the same period spread
+ * out.</li>
+ * </ul>
+ * No delay exceeds the max period. Unlike with a static Guava scheduler, a service using this scheduler does not
+ * stop when an iteration throws; the failure is logged, recorded and backed off from.
+ */
+public final class AdaptiveScheduler extends CustomScheduler {
+
+    private final long period;
+    private long initialDelay;
+    private long maxPeriod;
+    private double jitter = 0.1;
+
+    private volatile boolean started;
+    private volatile long lastDuration;
+    private volatile int consecutiveFailures;
+
+    private AdaptiveScheduler(final long period) {
+        this.period = period;
+        this.maxPeriod = period * 16;
+    }
+
+    /**
+     * @param period
+     * @param unit
+     * @return a scheduler running iterations every period
+     */
+    public static AdaptiveScheduler every(final long period, final TimeUnit unit) {
+        Preconditions.checkArgument(period > 0, "period must be positive");
+        return new AdaptiveScheduler(unit.toNanos(period));
+    }
+
+    /**
+     * Delay before the first iteration, subject to jitter.
+     * Default: 0
+     *
+     * @param initialDelay
+     * @param unit
+     * @return
+     */
+    public AdaptiveScheduler withInitialDelay(final long initialDelay, final TimeUnit unit) {
+        Preconditions.checkArgument(initialDelay >= 0, "initial delay must not be negative");
+        this.initialDelay = unit.toNanos(initialDelay);
+        return this;
+    }
+
+    /**
+     * Longest delay between iterations, however often they failed or however long they took.
+     * Default: 16 times the period
+     *
+     * @param maxPeriod
+     * @param unit
+     * @return
+     */
+    public AdaptiveScheduler withMaxPeriod(final long maxPeriod, final TimeUnit unit) {
+        Preconditions.checkArgument(unit.toNanos(maxPeriod) >= period, "max period must not be shorter than the period");
+        this.maxPeriod = unit.toNanos(maxPeriod);
+        return this;
+    }
+
+    /**
+     * Fraction by which each delay is randomly stretched or shortened. A service with no initial delay starts
+     * somewhere within the jitter of the period.
+     * Default: 0.1
+     *
+     * @param jitter between 0 and 1
+     * @return
+     */
+    public AdaptiveScheduler withJitter(final double jitter) {
+        Preconditions.checkArgument(jitter >= 0 && jitter <= 1, "jitter must be between 0 and 1");
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * @return the period in nanoseconds
+     */
+    long getPeriod() {
+        return period;
+    }
+
+    /**
+     * Called when the service starts, so that a restarted service begins with its initial delay and no backoff.
+     */
+    void reset() {
+        started = false;
+        lastDuration = 0;
+        consecutiveFailures = 0;
+    }
+
+    /**
+     * Called after each scheduled iteration.
+     *
+     * @param duration nanoseconds the iteration took
+     * @param failed whether the iteration threw
+     */
+    void completed(final long duration, final boolean failed) {
+        lastDuration = duration;
+        consecutiveFailures = failed ? consecutiveFailures + 1 : 0;
+    }
+
+    @Override
+    protected Schedule getNextSchedule() {
+        return new Schedule(nextDelay(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return nanoseconds until the next iteration
+     */
+    long nextDelay() {
+        final long delay;
+        if (!started) {
+            started = true;
+            delay = initialDelay > 0 ? jitter(initialDelay) : (long) (ThreadLocalRandom.current().nextDouble() * jitter * period);
+        } else if (consecutiveFailures > 0) {
+            delay = consecutiveFailures < Long.numberOfLeadingZeros(period) - 1
+                    ? jitter(period << consecutiveFailures)
+                    : maxPeriod;
+        } else if (lastDuration >= period) {
+            delay = jitter(lastDuration);
+        } else {
+            delay = jitter(period) - lastDuration;
+        }
+        return Math.max(0, Math.min(delay, maxPeriod));
+    }
+
+    private long jitter(final long delay) {
+        if (jitter == 0 || delay <= 0) {
+            return delay;
+        }
+        return (long) (delay * (1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1)));
+    }
+}
@@ -4,21 +4,33 @@ import com.google.common.util.concurrent.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class ScheduledServiceManager {
 
     private static final Logger log = LoggerFactory.getLogger(ScheduledServiceManager.class);
 
     private final Map<String, AbstractScheduledService> services;
+    private final long serviceTimeout;
+    private final long totalTimeout;
 
     /**
      * Package private constructor to prevent creation of this object.
+     *
+     * @param serviceTimeout nanoseconds {@link #startAll()} and {@link #stopAll()} wait for one service
+     * @param totalTimeout nanoseconds {@link #startAll()} and {@link #stopAll()} wait for all services
      */
-    ScheduledServiceManager() {
-        services = new HashMap<>();
+    ScheduledServiceManager(final long serviceTimeout, final long totalTimeout) {
+        this.services = new ConcurrentHashMap<>();
+        this.serviceTimeout = serviceTimeout;
+        this.totalTimeout = totalTimeout;
     }
 
     public void addService(final AbstractScheduledService service) {
@@ -34,24 +46,21 @@ public class ScheduledServiceManager {
         return Optional.ofNullable(services.get(name));
     }
 
+    /**
+     * Runs one iteration of the service in the background, after the running one if any.
+     *
+     * @param name
+     */
     public void runOnce(final String name) {
-        getService(name).ifPresent(service -> service.runOneIteration());
+        getService(name).ifPresent(AbstractScheduledService::trigger);
     }
 
     public void start(final String name) {
-        getService(name).ifPresent(service -> {
-            if (!service.isRunning()) {
-                services.get(name).start();
-            }
-        });
+        getService(name).ifPresent(AbstractScheduledService::start);
     }
 
     public void stop(final String name) {
-        getService(name).ifPresent(service -> {
-            if (service.isRunning()) {
-                services.get(name).stop();
-            }
-        });
+        getService(name).ifPresent(AbstractScheduledService::stop);
     }
 
     public Map<String, Service.State> getServiceStates() {
@@ -62,11 +71,69 @@ public class ScheduledServiceManager {
         return states;
     }
 
-    public void startAll() {
-        services.keySet().forEach(this::start);
+    public Map<String, ServiceStatistics> getServiceStatistics() {
+        final Map<String, ServiceStatistics> statistics = new HashMap<>();
+        for (final Map.Entry<String, AbstractScheduledService> entry : services.entrySet()) {
+            statistics.put(entry.getKey(), entry.getValue().statistics());
+        }
+        return statistics;
+    }
+
+    public List<ServiceRun> getRecentRuns(final String name) {
+        return getService(name).map(AbstractScheduledService::recentRuns).orElse(Collections.emptyList());
     }
 
-    public void stopAll() {
-        services.keySet().forEach(this::stop);
+    /**
+     * Starts all services at once and waits for them to run.
+     *
+     * @return whether all services are running within the timeouts
+     */
+    public boolean startAll() {
+        return await(true);
+    }
+
+    /**
+     * Stops all services at once and waits for their running iterations to finish.
+     *
+     * @return whether all services terminated within the timeouts
+     */
+    public boolean stopAll() {
+        return await(false);
+    }
+
+    private boolean await(final boolean start) {
+        final long begin = System.nanoTime();
+        final Map<String, Long> deadlines = new HashMap<>();
+        services.forEach((name, service) -> {
+            if (start) {
+                service.start();
+            } else {
+                service.stop();
+            }
+            deadlines.put(name, Math.min(System.nanoTime() + serviceTimeout, begin + totalTimeout));
+        });
+
+        boolean all = true;
+        for (final Map.Entry<String, Long> entry : deadlines.entrySet()) {
+            final String name = entry.getKey();
+            final AbstractScheduledService service = services.get(name);
+            final long remaining = Math.max(0, entry.getValue() - System.nanoTime());
+            try {
+                if (start) {
+                    service.awaitRunning(remaining, TimeUnit.NANOSECONDS);
+                } else if (service.state() != Service.State.FAILED) {
+                    service.awaitTerminated(remaining, TimeUnit.NANOSECONDS);
+                }
+            } catch (final TimeoutException e) {
+                log.warn(name + " did not " + (start ? "start" : "stop") + " in time, it is " + service.state());
+                all = false;
+            } catch (final IllegalStateException e) {
+                log.warn(name + " did not " + (start ? "start" : "stop"), e);
+                all = false;
+            }
+        }
+        log.info((start ? "Started " : "Stopped ") + services.size() + " services in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) + " ms");
+        return all;
     }
 }
@@ -14,6 +14,7 @@ import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -58,6 +59,29 @@ public final class ScheduledServiceManagerResource {
         return null;
     }
 
+    @ApiOperation(value = "get-service-statistics",
+            notes = "Returns success, failure, overrun and skip counts and run duration and start lag distributions of all services")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/get-service-statistics")
+    public Map<String, ServiceStatistics> getServiceStatistics() {
+        return scheduledServiceManager.getServiceStatistics();
+    }
+
+    @ApiOperation(value = "get-recent-runs",
+            notes = "Returns the most recent runs of the service, newest first")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/get-recent-runs")
+    public List<ServiceRun> getRecentRuns(
+            @ApiParam(value = "service", required = true)
+            @QueryParam(value = "service")
+            final String service) {
+        return scheduledServiceManager.getRecentRuns(service);
+    }
+
+    @ApiOperation(value = "run-once",
+            notes = "Queues one run of the service, after the running one if any, and returns immediately")
     @POST
     @Path("/run-once")
     public void runOnce(
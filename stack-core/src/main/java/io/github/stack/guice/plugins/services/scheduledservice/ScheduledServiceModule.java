@@ -1,27 +1,120 @@
 package io.github.stack.guice.plugins.services.scheduledservice;
 
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.AbstractModule;
-import com.google.inject.Binding;
-import com.google.inject.Injector;
-import com.google.inject.Key;
 import com.google.inject.Provides;
 import com.google.inject.Scopes;
 import com.google.inject.Singleton;
+import io.github.stack.guice.BindingIndex;
+import io.github.stack.guice.ShutdownHooks;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides a REST interface into managing {@link AbstractScheduledService}.
  * The manager class, {@link ScheduledServiceManager} can be injected with {@code Provider<ScheduledServiceManager>}.
+ * <p>
+ * All services share one scheduled executor, so the number of threads does not grow with the number of services.
+ * A service that fails only stops itself.
  */
 public final class ScheduledServiceModule extends AbstractModule {
     
     private static final Logger log = LoggerFactory.getLogger(ScheduledServiceModule.class);
     
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private ScheduledExecutorService executor;
+    private int maxConcurrencyPerService = 1;
+    private int runHistorySize = 100;
+    private long serviceTimeout = TimeUnit.SECONDS.toNanos(10);
+    private long totalTimeout = TimeUnit.SECONDS.toNanos(30);
+    
+    /**
+     * Number of threads shared by all scheduled services.
+     * Default: number of processors
+     *
+     * @param threads
+     * @return
+     */
+    public ScheduledServiceModule withThreads(final int threads) {
+        Preconditions.checkArgument(threads > 0, "threads must be positive");
+        this.threads = threads;
+        return this;
+    }
+    
+    /**
+     * Runs all scheduled services on the given executor instead of a pool of {@link #withThreads(int)} threads,
+     * for example one whose thread factory creates virtual threads for blocking jobs. The executor is not shut down
+     * by this module.
+     *
+     * @param executor
+     * @return
+     */
+    public ScheduledServiceModule withExecutor(final ScheduledExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+    
+    /**
+     * Number of iterations of one service that may run at the same time, counting the ones started through
+     * run-once; further scheduled iterations are skipped and run-once waits. Keep the default to never overlap
+     * iterations.
+     * Default: 1
+     *
+     * @param maxConcurrencyPerService
+     * @return
+     */
+    public ScheduledServiceModule withMaxConcurrencyPerService(final int maxConcurrencyPerService) {
+        Preconditions.checkArgument(maxConcurrencyPerService > 0, "max concurrency per service must be positive");
+        this.maxConcurrencyPerService = maxConcurrencyPerService;
+        return this;
+    }
+    
+    /**
+     * Number of recent runs kept per service for get-recent-runs.
+     * Default: 100
+     *
+     * @param runHistorySize
+     * @return
+     */
+    public ScheduledServiceModule withRunHistorySize(final int runHistorySize) {
+        Preconditions.checkArgument(runHistorySize >= 0, "run history size must not be negative");
+        this.runHistorySize = runHistorySize;
+        return this;
+    }
+    
+    /**
+     * How long startup and shutdown wait for one service to run or to finish its running iteration.
+     * Default: 10 seconds
+     *
+     * @param serviceTimeout
+     * @param unit
+     * @return
+     */
+    public ScheduledServiceModule withServiceTimeout(final long serviceTimeout, final TimeUnit unit) {
+        Preconditions.checkArgument(serviceTimeout > 0, "service timeout must be positive");
+        this.serviceTimeout = unit.toNanos(serviceTimeout);
+        return this;
+    }
+    
+    /**
+     * How long startup and shutdown wait for all services together; services are started and stopped at once.
+     * Default: 30 seconds
+     *
+     * @param totalTimeout
+     * @param unit
+     * @return
+     */
+    public ScheduledServiceModule withTotalTimeout(final long totalTimeout, final TimeUnit unit) {
+        Preconditions.checkArgument(totalTimeout > 0, "total timeout must be positive");
+        this.totalTimeout = unit.toNanos(totalTimeout);
+        return this;
+    }
+    
     @Override
     protected void configure() {
         bind(ScheduledServiceManagerResource.class).in(Scopes.SINGLETON);
@@ -29,46 +122,53 @@ public final class ScheduledServiceModule extends AbstractModule {
     
     @Singleton
     @Provides
-    public ScheduledServiceManager scheduledServiceManagerProvider(final Injector injector) {
-        try {
-            return createScheduledServiceManager(injector);
-        } finally {
-            startServices(injector);
-            addShutdownHook(injector);
-        }
+    public ScheduledServiceManager scheduledServiceManagerProvider(final BindingIndex bindingIndex) {
+        final ScheduledExecutorService scheduledExecutor = executor != null ? executor : buildExecutor();
+        final ScheduledServiceManager scheduledServiceManager = createScheduledServiceManager(bindingIndex, scheduledExecutor);
+        scheduledServiceManager.startAll();
+        addShutdownHook(scheduledServiceManager, executor != null ? null : scheduledExecutor);
+        return scheduledServiceManager;
     }
     
-    private static ScheduledServiceManager createScheduledServiceManager(final Injector injector) {
-        final ScheduledServiceManager scheduledServiceManager = new ScheduledServiceManager();
-        getScheduledServices(injector).forEach(scheduledServiceManager::addService);
-        return scheduledServiceManager;
+    private ScheduledExecutorService buildExecutor() {
+        return Executors.newScheduledThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat(AbstractScheduledService.class.getSimpleName() + "-%d")
+                .setDaemon(true)
+                .build());
     }
     
-    private static void startServices(final Injector injector) {
-        getScheduledServices(injector).forEach(scheduledService -> {
+    private ScheduledServiceManager createScheduledServiceManager(final BindingIndex bindingIndex,
+                                                                  final ScheduledExecutorService scheduledExecutor) {
+        final ScheduledServiceManager scheduledServiceManager = new ScheduledServiceManager(serviceTimeout, totalTimeout);
+        bindingIndex.getBindings(AbstractScheduledService.class).forEach(binding -> {
+            final AbstractScheduledService scheduledService = binding.getProvider().get();
             log.info("Starting " + scheduledService.getClass());
-            scheduledService.start();
+            scheduledService.setExecutor(scheduledExecutor);
+            scheduledService.setMaxConcurrency(maxConcurrencyPerService);
+            scheduledService.setRunHistorySize(runHistorySize);
+            scheduledServiceManager.addService(scheduledService);
         });
+        return scheduledServiceManager;
     }
     
-    private static void addShutdownHook(final Injector injector) {
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> getScheduledServices(injector).forEach(scheduledService -> {
-            log.info("Stopping " + scheduledService.getClass());
-            scheduledService.stop();
-        })));
-    }
-    
-    private static List<AbstractScheduledService> getScheduledServices(final Injector injector) {
-        final List<AbstractScheduledService> scheduledServices = new LinkedList<>();
-        final Map<Key<?>, Binding<?>> allBindings = injector.getAllBindings();
-        for (final Map.Entry<Key<?>, Binding<?>> entry : allBindings.entrySet()) {
-            final Key<?> key = entry.getKey();
-            
-            final Class<?> clazz = key.getTypeLiteral().getRawType();
-            if (AbstractScheduledService.class.isAssignableFrom(clazz)) {
-                scheduledServices.add(AbstractScheduledService.class.cast(entry.getValue().getProvider().get()));
+    /**
+     * @param ownedExecutor the executor to shut down after the services are stopped, or null
+     */
+    private void addShutdownHook(final ScheduledServiceManager scheduledServiceManager,
+                                 final ScheduledExecutorService ownedExecutor) {
+        ShutdownHooks.add(ShutdownHooks.Phase.SERVICES, () -> {
+            final long begin = System.nanoTime();
+            scheduledServiceManager.stopAll();
+            if (ownedExecutor != null) {
+                ownedExecutor.shutdown();
+                try {
+                    if (!ownedExecutor.awaitTermination(Math.max(0, begin + totalTimeout - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                        log.warn("Scheduled service threads did not terminate in time");
+                    }
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
             }
-        }
-        return scheduledServices;
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package io.github.stack.guice.plugins.services.scheduledservice;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the iterations of one {@link AbstractScheduledService}, keeping the most recent ones in a ring buffer.
+ */
+final class ServiceMetrics {
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Histogram durations = new Histogram(new ExponentiallyDecayingReservoir());
+    private final Histogram startLags = new Histogram(new ExponentiallyDecayingReservoir());
+    private final Counter successes = new Counter();
+    private final Counter failures = new Counter();
+    private final Counter overruns = new Counter();
+    private final Counter skipped = new Counter();
+
+    private final ServiceRun[] runs;
+    private long runCount;
+
+    /**
+     * @param historySize number of recent runs to keep
+     */
+    ServiceMetrics(final int historySize) {
+        this.runs = new ServiceRun[historySize];
+    }
+
+    /**
+     * @param startedAt start time in milliseconds since the epoch
+     * @param scheduled false if started through run-once
+     * @param startLag nanoseconds between when the iteration was due and when it started; ignored if not scheduled
+     * @param duration nanoseconds the iteration took
+     * @param period nanoseconds between iterations, or 0 if unknown
+     * @param failure what the iteration threw, or null
+     */
+    void record(final long startedAt, final boolean scheduled, final long startLag, final long duration,
+                final long period, final Throwable failure) {
+        final boolean overrun = period > 0 && duration > period;
+
+        durations.update(duration);
+        if (scheduled) {
+            startLags.update(Math.max(startLag, 0));
+        }
+        if (failure == null) {
+            successes.inc();
+        } else {
+            failures.inc();
+        }
+        if (overrun) {
+            overruns.inc();
+        }
+
+        add(new ServiceRun(
+                startedAt,
+                scheduled,
+                scheduled ? Math.max(startLag, 0) / NANOS_PER_MILLI : null,
+                duration / NANOS_PER_MILLI,
+                overrun,
+                failure == null ? null : failure.toString()));
+    }
+
+    void skipped() {
+        skipped.inc();
+    }
+
+    ServiceStatistics statistics() {
+        return new ServiceStatistics(
+                successes.getCount(),
+                failures.getCount(),
+                overruns.getCount(),
+                skipped.getCount(),
+                new ServiceStatistics.Timing(durations.getCount(), durations.getSnapshot()),
+                new ServiceStatistics.Timing(startLags.getCount(), startLags.getSnapshot()));
+    }
+
+    /**
+     * @return the most recent runs, newest first
+     */
+    synchronized List<ServiceRun> recentRuns() {
+        final int size = (int) Math.min(runCount, runs.length);
+        final List<ServiceRun> recent = new ArrayList<>(size);
+        for (long i = runCount - 1; i >= runCount - size; i--) {
+            recent.add(runs[(int) (i % runs.length)]);
+        }
+        return recent;
+    }
+
+    private synchronized void add(final ServiceRun run) {
+        if (runs.length > 0) {
+            runs[(int) (runCount % runs.length)] = run;
+            runCount++;
+        }
+    }
+}
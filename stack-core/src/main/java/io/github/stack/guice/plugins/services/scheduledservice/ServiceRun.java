@@ -0,0 +1,63 @@
+package io.github.stack.guice.plugins.services.scheduledservice;
+
+/**
+ * One iteration of a scheduled service, as returned by {@link ScheduledServiceManager#getRecentRuns(String)}.
+ */
+public final class ServiceRun {
+
+    private final long startedAt;
+    private final boolean scheduled;
+    private final Double startLagMillis;
+    private final double durationMillis;
+    private final boolean overrun;
+    private final String failure;
+
+    ServiceRun(final long startedAt, final boolean scheduled, final Double startLagMillis, final double durationMillis,
+               final boolean overrun, final String failure) {
+        this.startedAt = startedAt;
+        this.scheduled = scheduled;
+        this.startLagMillis = startLagMillis;
+        this.durationMillis = durationMillis;
+        this.overrun = overrun;
+        this.failure = failure;
+    }
+
+    /**
+     * @return the start time in milliseconds since the epoch
+     */
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * @return false if the iteration was started through run-once
+     */
+    public boolean isScheduled() {
+        return scheduled;
+    }
+
+    /**
+     * @return how long after it was due the iteration started, or null if it was not scheduled
+     */
+    public Double getStartLagMillis() {
+        return startLagMillis;
+    }
+
+    public double getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return whether the iteration took longer than the period of the service
+     */
+    public boolean isOverrun() {
+        return overrun;
+    }
+
+    /**
+     * @return the exception the iteration threw, or null if it succeeded
+     */
+    public String getFailure() {
+        return failure;
+    }
+}
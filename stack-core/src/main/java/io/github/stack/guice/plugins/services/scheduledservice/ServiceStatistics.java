@@ -0,0 +1,109 @@
+package io.github.stack.guice.plugins.services.scheduledservice;
+
+import com.codahale.metrics.Snapshot;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counters and timings of a scheduled service, as returned by {@link ScheduledServiceManager#getServiceStatistics()}.
+ * Timings are biased towards the last five minutes.
+ */
+public final class ServiceStatistics {
+
+    private final long successes;
+    private final long failures;
+    private final long overruns;
+    private final long skipped;
+    private final Timing durations;
+    private final Timing startLags;
+
+    ServiceStatistics(final long successes, final long failures, final long overruns, final long skipped,
+                      final Timing durations, final Timing startLags) {
+        this.successes = successes;
+        this.failures = failures;
+        this.overruns = overruns;
+        this.skipped = skipped;
+        this.durations = durations;
+        this.startLags = startLags;
+    }
+
+    public long getSuccesses() {
+        return successes;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return number of iterations that took longer than the period of the service
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * @return number of iterations skipped because the service was already running as many as allowed
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return how long iterations took
+     */
+    public Timing getDurations() {
+        return durations;
+    }
+
+    /**
+     * @return how long after they were due scheduled iterations started
+     */
+    public Timing getStartLags() {
+        return startLags;
+    }
+
+    /**
+     * Distribution of a duration, in milliseconds.
+     */
+    public static final class Timing {
+
+        private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+        private final long count;
+        private final Snapshot snapshot;
+
+        Timing(final long count, final Snapshot snapshot) {
+            this.count = count;
+            this.snapshot = snapshot;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMin() {
+            return snapshot.getMin() / NANOS_PER_MILLI;
+        }
+
+        public double getMean() {
+            return snapshot.getMean() / NANOS_PER_MILLI;
+        }
+
+        public double getMedian() {
+            return snapshot.getMedian() / NANOS_PER_MILLI;
+        }
+
+        public double getP95() {
+            return snapshot.get95thPercentile() / NANOS_PER_MILLI;
+        }
+
+        public double getP99() {
+            return snapshot.get99thPercentile() / NANOS_PER_MILLI;
+        }
+
+        public double getMax() {
+            return snapshot.getMax() / NANOS_PER_MILLI;
+        }
+    }
+}
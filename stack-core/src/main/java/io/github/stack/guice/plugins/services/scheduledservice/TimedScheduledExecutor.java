@@ -0,0 +1,85 @@
+package io.github.stack.guice.plugins.services.scheduledservice;
+
+import com.google.common.util.concurrent.ForwardingExecutorService;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decorates the executor of one {@link AbstractScheduledService} to tell it when each scheduled iteration was due
+ * and what its period is, neither of which the Guava {@code Scheduler} exposes. The due time is taken right before
+ * the task is handed to the delegate so it matches the delegate's own trigger time.
+ */
+final class TimedScheduledExecutor extends ForwardingExecutorService implements ScheduledExecutorService {
+
+    private final ScheduledExecutorService delegate;
+    private final AbstractScheduledService service;
+
+    TimedScheduledExecutor(final ScheduledExecutorService delegate, final AbstractScheduledService service) {
+        this.delegate = delegate;
+        this.service = service;
+    }
+
+    @Override
+    protected ExecutorService delegate() {
+        return delegate;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit) {
+        final long period = unit.toNanos(delay);
+        final AtomicLong due = new AtomicLong();
+        final Runnable timed = () -> {
+            service.due(due.get(), period);
+            command.run();
+        };
+        due.set(System.nanoTime() + period);
+        return delegate.schedule(timed, delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(final Callable<V> callable, final long delay, final TimeUnit unit) {
+        final long period = unit.toNanos(delay);
+        final AtomicLong due = new AtomicLong();
+        final Callable<V> timed = () -> {
+            service.due(due.get(), period);
+            return callable.call();
+        };
+        due.set(System.nanoTime() + period);
+        return delegate.schedule(timed, delay, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(final Runnable command, final long initialDelay, final long period,
+                                                  final TimeUnit unit) {
+        final long periodNanos = unit.toNanos(period);
+        final AtomicLong due = new AtomicLong();
+        final Runnable timed = () -> {
+            service.due(due.getAndAdd(periodNanos), periodNanos);
+            command.run();
+        };
+        due.set(System.nanoTime() + unit.toNanos(initialDelay));
+        return delegate.scheduleAtFixedRate(timed, initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable command, final long initialDelay, final long delay,
+                                                     final TimeUnit unit) {
+        final long delayNanos = unit.toNanos(delay);
+        final AtomicLong due = new AtomicLong();
+        final Runnable timed = () -> {
+            service.due(due.get(), delayNanos);
+            try {
+                command.run();
+            } finally {
+                due.set(System.nanoTime() + delayNanos);
+            }
+        };
+        due.set(System.nanoTime() + unit.toNanos(initialDelay));
+        return delegate.scheduleWithFixedDelay(timed, initialDelay, delay, unit);
+    }
+}
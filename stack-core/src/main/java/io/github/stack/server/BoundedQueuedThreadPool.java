@@ -0,0 +1,33 @@
+package io.github.stack.server;
+
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * {@link QueuedThreadPool} that bounds the number of requests waiting for a thread. Once more than the capacity
+ * are queued, {@link OverloadHandler} answers requests with 503 instead of handling them, so the queue drains at the
+ * cost of writing a short response and clients see a clean rejection.
+ * <p>
+ * The job queue itself is not bounded: selectors, acceptors and connection callbacks share it with requests, and
+ * rejecting those would drop connections instead of answering them. Rejected jobs are never run on the submitting
+ * thread either, since the submitter is usually a selector and blocking it stalls every connection it manages.
+ */
+class BoundedQueuedThreadPool extends QueuedThreadPool {
+    
+    private final int queueCapacity;
+    
+    BoundedQueuedThreadPool(final int minThreads,
+                            final int maxThreads,
+                            final int idleTimeout,
+                            final int queueCapacity) {
+        super(maxThreads, minThreads, idleTimeout, new BlockingArrayQueue<>(queueCapacity, queueCapacity));
+        this.queueCapacity = queueCapacity;
+    }
+    
+    /**
+     * @return whether more jobs are waiting than the queue capacity
+     */
+    boolean isOverloaded() {
+        return getQueueSize() > queueCapacity;
+    }
+}
@@ -0,0 +1,82 @@
+package io.github.stack.server;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Runs Jetty work, including request handling, on a user supplied {@link Executor}.
+ * This allows request handling on virtual threads (on a JDK that has them) or on any other pool.
+ * <p>
+ * Acceptors and selectors are long running jobs and also occupy the executor, so a bounded executor
+ * must leave room for them.
+ * <p>
+ * The executor is owned by the caller and is never shut down here; the pool is started and stopped
+ * with the server and {@link #join()} waits for the server to stop, not for the executor to terminate.
+ */
+class DelegatingThreadPool extends AbstractLifeCycle implements ThreadPool {
+    
+    private final Executor executor;
+    private final Object joinLock = new Object();
+    
+    DelegatingThreadPool(final Executor executor) {
+        this.executor = executor;
+    }
+    
+    @Override
+    public void execute(final Runnable job) {
+        executor.execute(job);
+    }
+    
+    @Override
+    protected void doStop() throws Exception {
+        synchronized (joinLock) {
+            joinLock.notifyAll();
+        }
+    }
+    
+    @Override
+    public void join() throws InterruptedException {
+        synchronized (joinLock) {
+            while (isStarting() || isStarted()) {
+                joinLock.wait();
+            }
+        }
+    }
+    
+    @Override
+    public int getThreads() {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getPoolSize();
+        }
+        return 0;
+    }
+    
+    @Override
+    public int getIdleThreads() {
+        if (executor instanceof ThreadPoolExecutor) {
+            final ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) executor;
+            return threadPoolExecutor.getPoolSize() - threadPoolExecutor.getActiveCount();
+        }
+        return 0;
+    }
+    
+    @Override
+    public boolean isLowOnThreads() {
+        if (executor instanceof ThreadPoolExecutor) {
+            final ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) executor;
+            return threadPoolExecutor.getActiveCount() >= threadPoolExecutor.getMaximumPoolSize()
+                    && !threadPoolExecutor.getQueue().isEmpty();
+        }
+        return false;
+    }
+    
+    int getQueueSize() {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getQueue().size();
+        }
+        return 0;
+    }
+}
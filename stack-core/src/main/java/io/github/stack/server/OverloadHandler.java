@@ -0,0 +1,36 @@
+package io.github.stack.server;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpHeaderValue;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Answers requests with 503 and closes the connection while the {@link BoundedQueuedThreadPool} is overloaded,
+ * and passes them on otherwise.
+ */
+final class OverloadHandler extends HandlerWrapper {
+    
+    private final BoundedQueuedThreadPool threadPool;
+    
+    OverloadHandler(final BoundedQueuedThreadPool threadPool) {
+        this.threadPool = threadPool;
+    }
+    
+    @Override
+    public void handle(final String target, final Request baseRequest, final HttpServletRequest request,
+                       final HttpServletResponse response) throws IOException, ServletException {
+        if (threadPool.isOverloaded()) {
+            baseRequest.setHandled(true);
+            response.setHeader(HttpHeader.CONNECTION.asString(), HttpHeaderValue.CLOSE.asString());
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        super.handle(target, baseRequest, request, response);
+    }
+}
@@ -1,26 +1,41 @@
 package io.github.stack.server;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Joiner;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.Sets;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
-import com.google.inject.Key;
 import com.google.inject.Module;
 import com.google.inject.servlet.GuiceFilter;
 import com.google.inject.servlet.GuiceServletContextListener;
+import io.github.stack.guice.BindingIndex;
+import io.github.stack.guice.ShutdownHooks;
+import io.github.stack.guice.modules.metrics.MetricsResource;
 import io.github.stack.guice.modules.swagger.StackServletModule;
 import io.github.stack.guice.modules.swagger.handler.exception.ThrowableResponseHandler;
 import io.swagger.jaxrs.config.BeanConfig;
 import io.swagger.jaxrs.listing.ApiListingResource;
+import io.swagger.models.Info;
+import io.swagger.models.Swagger;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.HandlerList;
-import org.eclipse.jetty.server.handler.ResourceHandler;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.servlet.DefaultServlet;
 import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.util.resource.Resource;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.servlet.ServletContainer;
 import org.slf4j.Logger;
@@ -28,11 +43,18 @@ import org.slf4j.LoggerFactory;
 
 import javax.servlet.DispatcherType;
 import javax.ws.rs.Path;
-import java.net.URISyntaxException;
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 import java.util.stream.Collectors;
 
 /**
@@ -48,28 +70,50 @@ public class Stack {
     
     private final Server server;
     private final Injector injector;
+    private final BindingIndex bindingIndex;
+    private final MetricRegistry metricRegistry;
     
     private final Builder builder;
     
+    // milliseconds taken by each startup phase, in order
+    private final Map<String, Long> startupTimes = new LinkedHashMap<>();
+    
     private Stack(final Builder builder) throws Exception {
         // https://www.javacodegeeks.com/2013/10/swagger-make-developers-love-working-with-your-rest-api.html
         Resource.setDefaultUseCaches(false);
         
         this.builder = builder;
-        this.injector = Guice.createInjector(this.builder.modules);
-        this.server = new Server(builder.port);
+        this.injector = time("injector", () -> Guice.createInjector(this.builder.modules));
+        this.bindingIndex = time("discovery", () -> {
+            final BindingIndex index = injector.getInstance(BindingIndex.class);
+            // the index reflects lazily; find the resources now so that the scan is timed here and not in swagger-scan
+            index.getTypesAnnotatedWith(Path.class);
+            return index;
+        });
+        this.server = new Server(buildThreadPool());
+        this.server.addConnector(buildConnector());
+        
+        this.metricRegistry = builder.metricRegistry != null ? builder.metricRegistry : new MetricRegistry();
+        registerThreadPoolMetrics();
     }
     
     public void start() throws Exception {
         final HandlerList handlers = new HandlerList();
         
-        handlers.addHandler(buildSwaggerContext());
-        handlers.addHandler(buildJerseyContext());
-        server.setHandler(handlers);
-        server.start();
+        handlers.addHandler(time("swagger-scan", this::buildSwaggerContext));
+        if (builder.swaggerCaching) {
+            handlers.addHandler(buildSwaggerSpecHandler());
+        }
+        time("jetty-start", () -> {
+            handlers.addHandler(buildJerseyContext());
+            server.setHandler(buildOverloadHandler(builder.compression ? buildGzipHandler(handlers) : handlers));
+            server.start();
+            return server;
+        });
+        registerStartupMetrics();
         
-        log.info(Stack.class + " Started");
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        log.info(Stack.class + " Started, startup times in ms: " + startupTimes);
+        ShutdownHooks.add(ShutdownHooks.Phase.SERVER, () -> {
             if (!server.isStopping() && !server.isStopped()) {
                 try {
                     server.stop();
@@ -79,23 +123,117 @@ public class Stack {
             }
             
             log.info(Stack.class + " Stopped");
-        }));
+        });
     }
     
     public void stop() throws Exception {
         server.stop();
     }
     
-    private Set<Class<?>> getResources() {
-        final Set<Key<?>> keys = injector.getAllBindings().keySet();
-        final Set<Class<?>> resources = Sets.newHashSet();
-        for (final Key<?> key : keys) {
-            final Class<?> classType = key.getTypeLiteral().getRawType();
-            if (classType.isAnnotationPresent(Path.class)) {
-                resources.add(classType);
-            }
+    /**
+     * @return milliseconds taken by each startup phase: injector, discovery (indexing the bindings and finding the
+     * resources), swagger-scan and jetty-start
+     */
+    public Map<String, Long> getStartupTimes() {
+        return new LinkedHashMap<>(startupTimes);
+    }
+    
+    private <T> T time(final String phase, final Callable<T> step) throws Exception {
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        try {
+            return step.call();
+        } finally {
+            startupTimes.put(phase, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        }
+    }
+    
+    private void registerStartupMetrics() {
+        for (final String phase : startupTimes.keySet()) {
+            registerGauge(MetricRegistry.name(Stack.class, "startup", phase), () -> startupTimes.get(phase));
         }
-        return resources;
+    }
+    
+    /**
+     * Replaces a gauge registered by an earlier Stack sharing the same registry.
+     */
+    private void registerGauge(final String name, final Gauge<?> gauge) {
+        metricRegistry.remove(name);
+        metricRegistry.register(name, gauge);
+    }
+    
+    /**
+     * Rejects requests with 503 while the bounded thread pool has more requests waiting than its queue capacity.
+     */
+    private Handler buildOverloadHandler(final Handler handler) {
+        if (!(server.getThreadPool() instanceof BoundedQueuedThreadPool)) {
+            return handler;
+        }
+        
+        final OverloadHandler overloadHandler = new OverloadHandler((BoundedQueuedThreadPool) server.getThreadPool());
+        overloadHandler.setHandler(handler);
+        return overloadHandler;
+    }
+    
+    private ThreadPool buildThreadPool() {
+        if (builder.executor != null) {
+            return new DelegatingThreadPool(builder.executor);
+        }
+        
+        final QueuedThreadPool threadPool;
+        if (builder.queueCapacity > 0) {
+            threadPool = new BoundedQueuedThreadPool(builder.minThreads, builder.maxThreads,
+                    builder.threadIdleTimeout, builder.queueCapacity);
+        } else {
+            threadPool = new QueuedThreadPool(builder.maxThreads, builder.minThreads, builder.threadIdleTimeout);
+        }
+        threadPool.setName("stack");
+        return threadPool;
+    }
+    
+    private void registerThreadPoolMetrics() {
+        final ThreadPool threadPool = server.getThreadPool();
+        registerGauge(MetricRegistry.name(Stack.class, "threads"), (Gauge<Integer>) threadPool::getThreads);
+        registerGauge(MetricRegistry.name(Stack.class, "threads", "idle"), (Gauge<Integer>) threadPool::getIdleThreads);
+        registerGauge(MetricRegistry.name(Stack.class, "threads", "busy"),
+                (Gauge<Integer>) () -> threadPool.getThreads() - threadPool.getIdleThreads());
+        registerGauge(MetricRegistry.name(Stack.class, "threads", "low"), (Gauge<Boolean>) threadPool::isLowOnThreads);
+        if (threadPool instanceof QueuedThreadPool) {
+            registerGauge(MetricRegistry.name(Stack.class, "threads", "queue-size"),
+                    (Gauge<Integer>) ((QueuedThreadPool) threadPool)::getQueueSize);
+        } else if (threadPool instanceof DelegatingThreadPool) {
+            registerGauge(MetricRegistry.name(Stack.class, "threads", "queue-size"),
+                    (Gauge<Integer>) ((DelegatingThreadPool) threadPool)::getQueueSize);
+        }
+    }
+    
+    private ServerConnector buildConnector() {
+        final HttpConfiguration httpConfiguration = new HttpConfiguration();
+        httpConfiguration.setOutputBufferSize(builder.outputBufferSize);
+        httpConfiguration.setPersistentConnectionsEnabled(builder.keepAlive);
+        
+        final HttpConnectionFactory http11 = new HttpConnectionFactory(httpConfiguration);
+        final ConnectionFactory[] connectionFactories;
+        if (builder.http2) {
+            final HTTP2CServerConnectionFactory http2c = new HTTP2CServerConnectionFactory(httpConfiguration);
+            http2c.setMaxConcurrentStreams(builder.maxConcurrentStreams);
+            connectionFactories = new ConnectionFactory[]{http11, http2c};
+        } else {
+            connectionFactories = new ConnectionFactory[]{http11};
+        }
+        
+        final ServerConnector connector = new ServerConnector(server, builder.acceptors, builder.selectors, connectionFactories);
+        connector.setPort(builder.port);
+        connector.setIdleTimeout(builder.idleTimeout);
+        return connector;
+    }
+    
+    private GzipHandler buildGzipHandler(final Handler handler) {
+        final GzipHandler gzipHandler = new GzipHandler();
+        gzipHandler.setMinGzipSize(builder.compressionMinSize);
+        gzipHandler.setIncludedMimeTypes(builder.compressionMimeTypes);
+        gzipHandler.setCompressionLevel(builder.compressionLevel);
+        gzipHandler.setHandler(handler);
+        return gzipHandler;
     }
     
     private ContextHandler buildJerseyContext() {
@@ -111,7 +249,7 @@ public class Stack {
         servletContextHandler.addServlet(servletHolder, "/*");
         servletContextHandler.addServlet(DefaultServlet.class, "/");
         
-        final Injector servletInjector = injector.createChildInjector(new StackServletModule(builder.throwableResponseHandler));
+        final Injector servletInjector = injector.createChildInjector(new StackServletModule(builder.throwableResponseHandler, metricRegistry, builder.exceptionLogRate));
         
         final FilterHolder guiceFilter = new FilterHolder(servletInjector.getInstance(GuiceFilter.class));
         servletContextHandler.addFilter(guiceFilter, String.format("/%s/*", JERSEY_CONTEXT_PATH), EnumSet.allOf(DispatcherType.class));
@@ -125,24 +263,45 @@ public class Stack {
         return servletContextHandler;
     }
     
+    /**
+     * The spec is read from the bound resources on the first request instead of from a classpath scan.
+     */
+    private SwaggerSpecHandler buildSwaggerSpecHandler() {
+        return new SwaggerSpecHandler(() -> {
+            final Swagger swagger = new Swagger()
+                    .info(new Info().title(builder.title).version(builder.version).description(builder.description))
+                    .basePath("/");
+            final Set<Class<?>> resources = new HashSet<>(bindingIndex.getTypesAnnotatedWith(Path.class));
+            resources.add(MetricsResource.class);
+            return builder.swaggerCacheDirectory != null
+                    ? SwaggerSpec.load(swagger, resources, builder.swaggerCacheDirectory)
+                    : SwaggerSpec.read(swagger, resources);
+        });
+    }
+    
     // TODO: add swagger-ui as maven dependency
-    private ContextHandler buildSwaggerContext() throws URISyntaxException {
-        final BeanConfig beanConfig = new BeanConfig();
-        beanConfig.setVersion(this.builder.version);
-        beanConfig.setTitle(this.builder.title);
-        beanConfig.setDescription(this.builder.description);
-        beanConfig.setBasePath("/");
-        beanConfig.setResourcePackage(Joiner.on(",").join(getResources().stream()
-                .map(Class::getPackage)
-                .map(Package::getName)
-                .collect(Collectors.toSet())));
-        beanConfig.setScan(true);
-        
-        final ResourceHandler swaggerUIResourceHandler = new ResourceHandler();
-        swaggerUIResourceHandler.setResourceBase(getClass().getClassLoader().getResource(builder.swaggerUIDirectory).toURI().toString());
+    private ContextHandler buildSwaggerContext() throws IOException {
+        if (!builder.swaggerCaching) {
+            final BeanConfig beanConfig = new BeanConfig();
+            beanConfig.setVersion(this.builder.version);
+            beanConfig.setTitle(this.builder.title);
+            beanConfig.setDescription(this.builder.description);
+            beanConfig.setBasePath("/");
+            final Set<String> resourcePackages = bindingIndex.getTypesAnnotatedWith(Path.class).stream()
+                    .map(Class::getPackage)
+                    .map(Package::getName)
+                    .collect(Collectors.toSet());
+            resourcePackages.add(MetricsResource.class.getPackage().getName());
+            beanConfig.setResourcePackage(Joiner.on(",").join(resourcePackages));
+            beanConfig.setScan(true);
+        }
+        
+        final StaticAssetHandler swaggerUIAssetHandler = new StaticAssetHandler(
+                Resource.newResource(getClass().getClassLoader().getResource(builder.swaggerUIDirectory)),
+                builder.swaggerUIMaxAge);
         final ContextHandler swaggerUIContext = new ContextHandler();
         swaggerUIContext.setContextPath(SWAGGER_CONTEXT_PATH);
-        swaggerUIContext.setHandler(swaggerUIResourceHandler);
+        swaggerUIContext.setHandler(swaggerUIAssetHandler);
         
         return swaggerUIContext;
     }
@@ -160,9 +319,33 @@ public class Stack {
         private String description = "sample description";
         
         private int port = 5555;
+        private boolean http2 = false;
+        private int maxConcurrentStreams = 128;
+        private int acceptors = -1;
+        private int selectors = -1;
+        private long idleTimeout = 30000;
+        private int outputBufferSize = 32768;
+        private boolean keepAlive = true;
+        
+        private boolean compression = false;
+        private int compressionMinSize = 1024;
+        private String[] compressionMimeTypes = {"application/json", "text/plain", "text/html", "text/css", "application/javascript"};
+        private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+        
+        private int minThreads = 8;
+        private int maxThreads = 200;
+        private int threadIdleTimeout = 60000;
+        private int queueCapacity = 0;
+        private Executor executor = null;
+        
         private ThrowableResponseHandler throwableResponseHandler = null;
+        private double exceptionLogRate = 0;
+        private MetricRegistry metricRegistry = null;
         
         private String swaggerUIDirectory = "swagger-ui";
+        private int swaggerUIMaxAge = 3600;
+        private boolean swaggerCaching = false;
+        private File swaggerCacheDirectory = null;
         
         public Builder() {
             this.modules = new HashSet<>();
@@ -179,6 +362,203 @@ public class Stack {
             return this;
         }
         
+        /**
+         * Serves cleartext HTTP/2 (h2c) next to HTTP/1.1 on the same port, both through prior knowledge
+         * and through the HTTP/1.1 upgrade.
+         * Default: false
+         *
+         * @param http2
+         * @return
+         */
+        public Builder withHttp2(final boolean http2) {
+            this.http2 = http2;
+            return this;
+        }
+        
+        /**
+         * Maximum number of concurrent streams per HTTP/2 connection. Only used with HTTP/2.
+         * Default: 128
+         *
+         * @param maxConcurrentStreams
+         * @return
+         */
+        public Builder withMaxConcurrentStreams(final int maxConcurrentStreams) {
+            this.maxConcurrentStreams = maxConcurrentStreams;
+            return this;
+        }
+        
+        /**
+         * Number of acceptor threads.
+         * Default: -1 (derived by Jetty from the number of cores)
+         *
+         * @param acceptors
+         * @return
+         */
+        public Builder withAcceptors(final int acceptors) {
+            this.acceptors = acceptors;
+            return this;
+        }
+        
+        /**
+         * Number of selector threads.
+         * Default: -1 (derived by Jetty from the number of cores)
+         *
+         * @param selectors
+         * @return
+         */
+        public Builder withSelectors(final int selectors) {
+            this.selectors = selectors;
+            return this;
+        }
+        
+        /**
+         * Time in milliseconds before an idle connection is closed.
+         * Default: 30000
+         *
+         * @param idleTimeout
+         * @return
+         */
+        public Builder withIdleTimeout(final long idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+        
+        /**
+         * Size in bytes of the response buffer; responses that fit are sent with a Content-Length
+         * instead of being chunked.
+         * Default: 32768
+         *
+         * @param outputBufferSize
+         * @return
+         */
+        public Builder withOutputBufferSize(final int outputBufferSize) {
+            this.outputBufferSize = outputBufferSize;
+            return this;
+        }
+        
+        /**
+         * Keeps HTTP/1.1 connections open between requests.
+         * Default: true
+         *
+         * @param keepAlive
+         * @return
+         */
+        public Builder withKeepAlive(final boolean keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+        
+        /**
+         * Gzip compresses responses for clients that accept it.
+         * Default: false
+         *
+         * @param compression
+         * @return
+         */
+        public Builder withCompression(final boolean compression) {
+            this.compression = compression;
+            return this;
+        }
+        
+        /**
+         * Responses smaller than this many bytes are sent uncompressed. Only used with compression.
+         * Default: 1024
+         *
+         * @param compressionMinSize
+         * @return
+         */
+        public Builder withCompressionMinSize(final int compressionMinSize) {
+            this.compressionMinSize = compressionMinSize;
+            return this;
+        }
+        
+        /**
+         * Only responses of these mime types are compressed. Only used with compression.
+         * Default: application/json, text/plain, text/html, text/css, application/javascript
+         *
+         * @param compressionMimeTypes
+         * @return
+         */
+        public Builder withCompressionMimeTypes(final String... compressionMimeTypes) {
+            this.compressionMimeTypes = compressionMimeTypes;
+            return this;
+        }
+        
+        /**
+         * Deflater compression level, from 1 (fastest) to 9 (smallest). Only used with compression.
+         * Default: {@link Deflater#DEFAULT_COMPRESSION}
+         *
+         * @param compressionLevel
+         * @return
+         */
+        public Builder withCompressionLevel(final int compressionLevel) {
+            this.compressionLevel = compressionLevel;
+            return this;
+        }
+        
+        /**
+         * Minimum number of request threads kept alive.
+         * Default: 8
+         *
+         * @param minThreads
+         * @return
+         */
+        public Builder withMinThreads(final int minThreads) {
+            this.minThreads = minThreads;
+            return this;
+        }
+        
+        /**
+         * Maximum number of request threads. Acceptor and selector threads are taken from the same pool.
+         * Default: 200
+         *
+         * @param maxThreads
+         * @return
+         */
+        public Builder withMaxThreads(final int maxThreads) {
+            this.maxThreads = maxThreads;
+            return this;
+        }
+        
+        /**
+         * Time in milliseconds before an idle thread above the minimum is stopped.
+         * Default: 60000
+         *
+         * @param threadIdleTimeout
+         * @return
+         */
+        public Builder withThreadIdleTimeout(final int threadIdleTimeout) {
+            this.threadIdleTimeout = threadIdleTimeout;
+            return this;
+        }
+        
+        /**
+         * Bounds the number of requests waiting for a request thread; once full, new requests are answered with 503.
+         * Default: 0 (unbounded)
+         *
+         * @param queueCapacity
+         * @return
+         */
+        public Builder withQueueCapacity(final int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+        
+        /**
+         * Runs all Jetty work on the given executor instead of the built-in thread pool; the thread pool
+         * options are then ignored. On a JDK with virtual threads, pass a virtual-thread-per-task executor
+         * so blocking resource methods do not hold on to platform threads.
+         * The executor is not shut down by {@link Stack}.
+         * Default: none
+         *
+         * @param executor
+         * @return
+         */
+        public Builder withExecutor(final Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+        
         /**
          * Defines how to handle Throwable while handling a request.
          * No default implementation
@@ -191,6 +571,36 @@ public class Stack {
             return this;
         }
         
+        /**
+         * Number of exceptions of one type logged per second; the others are counted and reported with the next
+         * one logged. Every exception type is also metered as exceptions.&lt;class name&gt;. Throw subclasses of
+         * {@link io.github.stack.guice.modules.swagger.handler.exception.StacklessException} for expected errors and
+         * wrap the handler in a
+         * {@link io.github.stack.guice.modules.swagger.handler.exception.CachedThrowableResponseHandler} to answer
+         * them without building a response each time.
+         * Default: 0 (no limit)
+         *
+         * @param exceptionLogRate
+         * @return
+         */
+        public Builder withExceptionLogRate(final double exceptionLogRate) {
+            this.exceptionLogRate = exceptionLogRate;
+            return this;
+        }
+        
+        /**
+         * Registry that receives the request and thread pool metrics, so they can be reported together with
+         * application metrics. All metrics are served from /api/stack/metrics/v1.
+         * Default: a new registry
+         *
+         * @param metricRegistry
+         * @return
+         */
+        public Builder withMetricRegistry(final MetricRegistry metricRegistry) {
+            this.metricRegistry = metricRegistry;
+            return this;
+        }
+        
         /**
          * @param modules
          * @return
@@ -236,6 +646,48 @@ public class Stack {
             return this;
         }
         
+        /**
+         * Seconds browsers may use swagger-ui files without asking again; after that they revalidate with the
+         * ETag and get a 304. The files are read into memory once on start. 0 always revalidates.
+         * Default: 3600
+         *
+         * @param swaggerUIMaxAge
+         * @return
+         */
+        public Builder withSwaggerUIMaxAge(final int swaggerUIMaxAge) {
+            this.swaggerUIMaxAge = swaggerUIMaxAge;
+            return this;
+        }
+        
+        /**
+         * Skips the classpath scan for Swagger on startup. /swagger.json is instead read from the bound resources
+         * on its first request and then served pre-serialized, gzipped for clients that accept it, and with an
+         * ETag so unchanged specs are answered with 304. /swagger.yaml is not served in this mode.
+         * Default: false
+         *
+         * @param swaggerCaching
+         * @return
+         */
+        public Builder withSwaggerCaching(final boolean swaggerCaching) {
+            this.swaggerCaching = swaggerCaching;
+            return this;
+        }
+        
+        /**
+         * Keeps the spec in this directory, so later boots load it instead of reading the resources. The file is
+         * keyed by title, version, description and the names of the resource classes; bump the version or delete
+         * the file when a resource changes otherwise. The directory can also be filled at build time by starting
+         * the application once. Only used with swagger caching.
+         * Default: none
+         *
+         * @param swaggerCacheDirectory
+         * @return
+         */
+        public Builder withSwaggerCacheDirectory(final File swaggerCacheDirectory) {
+            this.swaggerCacheDirectory = swaggerCacheDirectory;
+            return this;
+        }
+        
         /**
          * @return
          * @throws Exception
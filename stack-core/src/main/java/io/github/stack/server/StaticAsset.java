@@ -0,0 +1,161 @@
+package io.github.stack.server;
+
+import com.google.common.hash.Hashing;
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.QuotedCSV;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A response body kept in memory, together with its gzipped form and a strong ETag computed once. The gzipped form
+ * has its own ETag, with the {@code --gzip} suffix that Jetty's GzipHandler uses for the variants it compresses.
+ */
+final class StaticAsset {
+    
+    private final byte[] content;
+    private final byte[] gzipped;
+    private final String contentType;
+    private final String etag;
+    private final String gzippedEtag;
+    
+    /**
+     * @param content
+     * @param contentType
+     * @param compress whether to keep a gzipped form; it is dropped if it is not smaller
+     */
+    StaticAsset(final byte[] content, final String contentType, final boolean compress) {
+        this.content = content;
+        final byte[] compressed = compress ? gzip(content) : null;
+        this.gzipped = compressed != null && compressed.length < content.length ? compressed : null;
+        this.contentType = contentType;
+        this.etag = "\"" + Hashing.murmur3_128().hashBytes(content) + "\"";
+        this.gzippedEtag = etag.substring(0, etag.length() - 1) + CompressedContentFormat.GZIP._etagQuote;
+    }
+    
+    byte[] getContent() {
+        return content;
+    }
+    
+    String getEtag() {
+        return etag;
+    }
+    
+    /**
+     * Writes the asset for a GET or HEAD request: 304 if the client has it already, the gzipped form if the client
+     * accepts it, the content otherwise.
+     *
+     * @param request
+     * @param response
+     * @param cacheControl
+     * @throws IOException
+     */
+    void serve(final HttpServletRequest request, final HttpServletResponse response, final String cacheControl)
+            throws IOException {
+        final boolean gzip = gzipped != null && acceptsGzip(request.getHeader(HttpHeader.ACCEPT_ENCODING.asString()));
+        response.setHeader(HttpHeader.ETAG.asString(), gzip ? gzippedEtag : etag);
+        response.setHeader(HttpHeader.CACHE_CONTROL.asString(), cacheControl);
+        if (gzipped != null) {
+            response.setHeader(HttpHeader.VARY.asString(), HttpHeader.ACCEPT_ENCODING.asString());
+        }
+        
+        if (matches(request.getHeader(HttpHeader.IF_NONE_MATCH.asString()), gzip)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        
+        final byte[] body = gzip ? gzipped : content;
+        response.setStatus(HttpServletResponse.SC_OK);
+        if (contentType != null) {
+            response.setContentType(contentType);
+        }
+        if (gzip) {
+            response.setHeader(HttpHeader.CONTENT_ENCODING.asString(), "gzip");
+        }
+        response.setContentLength(body.length);
+        if (HttpMethod.GET.is(request.getMethod())) {
+            response.getOutputStream().write(body);
+        }
+    }
+    
+    /**
+     * Compares the entity tags of If-None-Match with the served form weakly, as RFC 7232 requires.
+     * GzipHandler strips the {@code --gzip} suffix from If-None-Match, so the plain ETag matches the gzipped form too.
+     *
+     * @param ifNoneMatch
+     * @param gzip whether the gzipped form is served
+     * @return whether the client has the served form already
+     */
+    private boolean matches(final String ifNoneMatch, final boolean gzip) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        
+        for (final String value : new QuotedCSV(true, ifNoneMatch)) {
+            final String tag = value.startsWith("W/") ? value.substring(2) : value;
+            if (tag.equals("*") || tag.equals(etag) || gzip && tag.equals(gzippedEtag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * @param acceptEncoding
+     * @return whether the Accept-Encoding list accepts gzip, explicitly or through {@code *}, with a non-zero q-value
+     */
+    static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        
+        double gzipQuality = -1;
+        double anyQuality = -1;
+        for (final String value : new QuotedCSV(false, acceptEncoding)) {
+            final String[] parts = value.split(";");
+            final String coding = parts[0].trim().toLowerCase(Locale.ENGLISH);
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                final String parameter = parts[i].trim();
+                if (parameter.length() > 2 && parameter.substring(0, 2).equalsIgnoreCase("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzipQuality = Math.max(gzipQuality, quality);
+            } else if (coding.equals("*")) {
+                anyQuality = quality;
+            }
+        }
+        return (gzipQuality >= 0 ? gzipQuality : anyQuality) > 0;
+    }
+    
+    /**
+     * @param request
+     * @return whether the request is a GET or HEAD, the only methods assets are served for
+     */
+    static boolean isReadRequest(final HttpServletRequest request) {
+        return HttpMethod.GET.is(request.getMethod()) || HttpMethod.HEAD.is(request.getMethod());
+    }
+    
+    private static byte[] gzip(final byte[] bytes) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,87 @@
+package io.github.stack.server;
+
+import com.google.common.io.ByteStreams;
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.resource.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serves the files of a directory, on the file system or in a jar, from memory. All files are read once when the
+ * handler is created, text files are gzipped once, and every file gets a strong ETag, so requests neither touch
+ * the class loader nor compress anything.
+ */
+final class StaticAssetHandler extends AbstractHandler {
+    
+    private static final Logger log = LoggerFactory.getLogger(StaticAssetHandler.class);
+    
+    private static final String WELCOME_FILE = "index.html";
+    
+    private final Map<String, StaticAsset> assets;
+    private final String cacheControl;
+    
+    /**
+     * @param directory
+     * @param maxAge seconds clients may use an asset without revalidating it
+     * @throws IOException
+     */
+    StaticAssetHandler(final Resource directory, final int maxAge) throws IOException {
+        this.assets = new HashMap<>();
+        this.cacheControl = maxAge > 0 ? "public, max-age=" + maxAge : "no-cache";
+        
+        final MimeTypes mimeTypes = new MimeTypes();
+        load(directory, "/", mimeTypes);
+        log.info("Loaded " + assets.size() + " assets from " + directory);
+    }
+    
+    @Override
+    public void handle(final String target, final Request baseRequest, final HttpServletRequest request,
+                       final HttpServletResponse response) throws IOException {
+        if (!StaticAsset.isReadRequest(request)) {
+            return;
+        }
+        
+        final StaticAsset asset = assets.get(target.endsWith("/") ? target + WELCOME_FILE : target);
+        if (asset != null) {
+            baseRequest.setHandled(true);
+            asset.serve(request, response, cacheControl);
+        }
+    }
+    
+    private void load(final Resource directory, final String path, final MimeTypes mimeTypes) throws IOException {
+        final String[] names = directory.list();
+        if (names == null) {
+            return;
+        }
+        
+        for (final String name : names) {
+            final Resource resource = directory.addPath(name);
+            if (resource.isDirectory()) {
+                load(resource, path + (name.endsWith("/") ? name : name + "/"), mimeTypes);
+            } else {
+                final byte[] content;
+                try (InputStream in = resource.getInputStream()) {
+                    content = ByteStreams.toByteArray(in);
+                }
+                final String contentType = mimeTypes.getMimeByExtension(name);
+                assets.put(path + name, new StaticAsset(content, contentType, isCompressible(contentType)));
+            }
+        }
+    }
+    
+    private static boolean isCompressible(final String contentType) {
+        return contentType != null && (contentType.startsWith("text/")
+                || contentType.contains("javascript")
+                || contentType.contains("json")
+                || contentType.contains("xml"));
+    }
+}
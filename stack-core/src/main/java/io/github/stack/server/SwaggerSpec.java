@@ -0,0 +1,89 @@
+package io.github.stack.server;
+
+import com.google.common.hash.Hashing;
+import io.swagger.jaxrs.Reader;
+import io.swagger.models.Swagger;
+import io.swagger.util.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The Swagger spec serialized once, kept as a {@link StaticAsset}.
+ */
+final class SwaggerSpec {
+    
+    private static final Logger log = LoggerFactory.getLogger(SwaggerSpec.class);
+    
+    private final StaticAsset asset;
+    
+    private SwaggerSpec(final byte[] json) {
+        this.asset = new StaticAsset(json, "application/json", true);
+    }
+    
+    /**
+     * Reads the spec from the given resource classes, without scanning the classpath.
+     *
+     * @param swagger the spec to add the resources to, with its info and base path set
+     * @param resources
+     * @return
+     */
+    static SwaggerSpec read(final Swagger swagger, final Set<Class<?>> resources) {
+        try {
+            return new SwaggerSpec(Json.mapper().writeValueAsBytes(new Reader(swagger).read(resources)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
+    /**
+     * Loads the spec from the cache directory, or reads it and stores it there. The file is keyed by the info of
+     * the spec and the names of the resource classes; a change to a resource that keeps both is only picked up
+     * once the file is deleted or the version is bumped.
+     *
+     * @param swagger the spec to add the resources to, with its info and base path set
+     * @param resources
+     * @param cacheDirectory
+     * @return
+     */
+    static SwaggerSpec load(final Swagger swagger, final Set<Class<?>> resources, final File cacheDirectory) {
+        final File file = new File(cacheDirectory, "swagger-" + fingerprint(swagger, resources) + ".json");
+        try {
+            if (file.isFile()) {
+                return new SwaggerSpec(Files.readAllBytes(file.toPath()));
+            }
+            
+            final SwaggerSpec swaggerSpec = read(swagger, resources);
+            Files.createDirectories(cacheDirectory.toPath());
+            final File temp = File.createTempFile(".swagger", ".tmp", cacheDirectory);
+            Files.write(temp.toPath(), swaggerSpec.asset.getContent());
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            return swaggerSpec;
+        } catch (IOException e) {
+            log.warn("Failed to use " + file + ", reading the spec instead", e);
+            return read(swagger, resources);
+        }
+    }
+    
+    StaticAsset getAsset() {
+        return asset;
+    }
+    
+    private static String fingerprint(final Swagger swagger, final Set<Class<?>> resources) {
+        final StringBuilder key = new StringBuilder()
+                .append(swagger.getInfo().getTitle()).append('\n')
+                .append(swagger.getInfo().getVersion()).append('\n')
+                .append(swagger.getInfo().getDescription()).append('\n')
+                .append(swagger.getBasePath());
+        final Set<String> names = new TreeSet<>();
+        resources.forEach(resource -> names.add(resource.getName()));
+        names.forEach(name -> key.append('\n').append(name));
+        return Hashing.murmur3_128().hashUnencodedChars(key).toString();
+    }
+}
@@ -0,0 +1,37 @@
+package io.github.stack.server;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Serves /swagger.json from a {@link SwaggerSpec} that is created on the first request.
+ */
+final class SwaggerSpecHandler extends AbstractHandler {
+    
+    static final String PATH = "/swagger.json";
+    
+    private final Supplier<SwaggerSpec> swaggerSpec;
+    
+    /**
+     * @param swaggerSpec called once, on the first request
+     */
+    SwaggerSpecHandler(final Supplier<SwaggerSpec> swaggerSpec) {
+        this.swaggerSpec = Suppliers.memoize(swaggerSpec);
+    }
+    
+    @Override
+    public void handle(final String target, final Request baseRequest, final HttpServletRequest request,
+                       final HttpServletResponse response) throws IOException {
+        if (!PATH.equals(target) || !StaticAsset.isReadRequest(request)) {
+            return;
+        }
+        baseRequest.setHandled(true);
+        swaggerSpec.get().getAsset().serve(request, response, "no-cache");
+    }
+}
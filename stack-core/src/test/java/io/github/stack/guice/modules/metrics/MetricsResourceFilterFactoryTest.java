@@ -0,0 +1,111 @@
+package io.github.stack.guice.modules.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.servlet.GuiceFilter;
+import com.google.inject.servlet.GuiceServletContextListener;
+import io.github.stack.guice.modules.swagger.StackServletModule;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.DefaultServlet;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.DispatcherType;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+
+public class MetricsResourceFilterFactoryTest {
+    
+    private static final String PREFIX = MetricRegistry.name(TestResource.class);
+    
+    @Path("/test")
+    public static class TestResource {
+        
+        @GET
+        @Path("/ok")
+        public String ok() {
+            return "ok";
+        }
+        
+        @GET
+        @Path("/fail")
+        public String fail() {
+            throw new IllegalStateException("fail");
+        }
+    }
+    
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private Server server;
+    
+    @Before
+    public void setUp() throws Exception {
+        final Injector injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(TestResource.class);
+            }
+        });
+        final Injector servletInjector = injector.createChildInjector(new StackServletModule(null, metricRegistry));
+        
+        final ServletContextHandler servletContextHandler = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        servletContextHandler.setContextPath("/");
+        servletContextHandler.addServlet(DefaultServlet.class, "/");
+        servletContextHandler.addFilter(new FilterHolder(servletInjector.getInstance(GuiceFilter.class)), "/*",
+                EnumSet.allOf(DispatcherType.class));
+        servletContextHandler.addEventListener(new GuiceServletContextListener() {
+            @Override
+            protected Injector getInjector() {
+                return servletInjector;
+            }
+        });
+        
+        server = new Server(0);
+        server.setHandler(servletContextHandler);
+        server.start();
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+    
+    @Test
+    public void testSuccess() throws Exception {
+        assertEquals(200, get("/test/ok"));
+        
+        assertEquals(0, metricRegistry.counter(MetricRegistry.name(PREFIX, "ok", "in-flight")).getCount());
+        assertEquals(1, metricRegistry.timer(MetricRegistry.name(PREFIX, "ok", "requests")).getCount());
+    }
+    
+    @Test
+    public void testUnmappedException() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(500, get("/test/fail"));
+        }
+        
+        assertEquals(0, metricRegistry.counter(MetricRegistry.name(PREFIX, "fail", "in-flight")).getCount());
+        assertEquals(3, metricRegistry.timer(MetricRegistry.name(PREFIX, "fail", "requests")).getCount());
+        assertEquals(3, metricRegistry.meter(MetricRegistry.name(PREFIX, "fail", "errors", "500")).getCount());
+    }
+    
+    private int get(final String path) throws Exception {
+        final int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package io.github.stack.guice.modules.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class PrometheusTextFormatTest {
+    
+    private static final Pattern TYPE = Pattern.compile("# TYPE ([a-zA-Z_:][a-zA-Z0-9_:]*) (gauge|counter|summary)");
+    private static final Pattern SAMPLE = Pattern.compile("([a-zA-Z_:][a-zA-Z0-9_:]*)(\\{quantile=\"([0-9.]+)\"\\})? (\\S+)");
+    
+    @Test
+    public void testSummingTimerIsSummary() {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final Timer timer = SummingTimer.get(metricRegistry, "resource.requests");
+        for (int i = 1; i <= 100; i++) {
+            timer.update(i, TimeUnit.MILLISECONDS);
+        }
+        
+        final Map<String, Double> samples = parse(PrometheusTextFormat.write(metricRegistry), "summary");
+        assertEquals(5.050, samples.get("resource_requests_seconds_sum"), 1e-9);
+        assertEquals(100, samples.get("resource_requests_seconds_count"), 0);
+        assertQuantiles(samples, "resource_requests_seconds", 0.001, 0.1);
+    }
+    
+    @Test
+    public void testPlainTimerAndHistogramAreGauges() {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        for (int i = 1; i <= 100; i++) {
+            metricRegistry.timer("plain").update(i, TimeUnit.MILLISECONDS);
+            metricRegistry.histogram("sizes").update(i);
+        }
+        
+        final String text = PrometheusTextFormat.write(metricRegistry);
+        final Map<String, Double> samples = parse(text, "gauge");
+        assertFalse(text, samples.containsKey("plain_seconds_sum"));
+        assertEquals(100, samples.get("plain_seconds_count"), 0);
+        assertEquals(100, samples.get("sizes_count"), 0);
+        assertQuantiles(samples, "plain_seconds", 0.001, 0.1);
+        assertQuantiles(samples, "sizes", 1, 100);
+    }
+    
+    @Test
+    public void testOtherMetrics() {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.counter("in-flight").inc(3);
+        metricRegistry.meter("errors.500").mark(2);
+        metricRegistry.register("up", (Gauge<Boolean>) () -> true);
+        metricRegistry.register("name", (Gauge<String>) () -> "not a number");
+        
+        final Map<String, Double> samples = parse(PrometheusTextFormat.write(metricRegistry), null);
+        assertEquals(3, samples.get("in_flight"), 0);
+        assertEquals(2, samples.get("errors_500_total"), 0);
+        assertEquals(1, samples.get("up"), 0);
+        assertFalse(samples.containsKey("name"));
+    }
+    
+    @Test
+    public void testSummingTimerReusesRegisteredTimer() {
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final Timer timer = SummingTimer.get(metricRegistry, "requests");
+        assertTrue(timer instanceof SummingTimer);
+        assertTrue(timer == SummingTimer.get(metricRegistry, "requests"));
+        assertTrue(metricRegistry.timer("requests") == timer);
+    }
+    
+    /**
+     * Checks that every sample belongs to a family declared once before it, with the expected type for families with
+     * quantiles.
+     *
+     * @return the samples by name, with the quantile in the name if there is one
+     */
+    private static Map<String, Double> parse(final String text, final String quantileType) {
+        final Map<String, String> types = new HashMap<>();
+        final Map<String, Double> samples = new LinkedHashMap<>();
+        String family = null;
+        for (final String line : text.split("\n")) {
+            final Matcher type = TYPE.matcher(line);
+            if (type.matches()) {
+                assertFalse(line, types.containsKey(type.group(1)));
+                types.put(type.group(1), type.group(2));
+                family = type.group(1);
+                continue;
+            }
+            
+            final Matcher sample = SAMPLE.matcher(line);
+            assertTrue(line, sample.matches());
+            final String name = sample.group(1);
+            final String familyType = types.get(family);
+            assertTrue(line, name.equals(family) || familyType.equals("summary")
+                    && (name.equals(family + "_sum") || name.equals(family + "_count")));
+            if (sample.group(3) != null) {
+                assertEquals(line, quantileType, familyType);
+            }
+            samples.put(sample.group(3) == null ? name : name + "{" + sample.group(3) + "}", Double.parseDouble(sample.group(4)));
+        }
+        return samples;
+    }
+    
+    private static void assertQuantiles(final Map<String, Double> samples, final String name, final double min, final double max) {
+        double previous = min;
+        for (final String quantile : new String[]{"0.5", "0.75", "0.95", "0.99", "0.999"}) {
+            final Double value = samples.get(name + "{" + quantile + "}");
+            assertNotNull(name + " " + quantile, value);
+            assertTrue(name + " " + quantile, value >= previous && value <= max);
+            previous = value;
+        }
+    }
+}
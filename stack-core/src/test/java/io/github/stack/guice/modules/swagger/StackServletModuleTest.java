@@ -0,0 +1,157 @@
+package io.github.stack.guice.modules.swagger;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.io.ByteStreams;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.servlet.GuiceFilter;
+import com.google.inject.servlet.GuiceServletContextListener;
+import com.google.inject.servlet.ServletModule;
+import io.github.stack.guice.modules.swagger.handler.exception.ThrowableResponseHandler;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.DefaultServlet;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StackServletModuleTest {
+
+    private static final String EXCEPTIONS = MetricRegistry.name("exceptions", IllegalStateException.class.getName());
+    private static final ThrowableResponseHandler HANDLER =
+            throwable -> Response.status(503).entity("handled " + throwable.getMessage()).build();
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private Server server;
+
+    /**
+     * Fails after the filters of {@link StackServletModule}, optionally once part of the response is committed.
+     */
+    private static class FailingFilter implements Filter {
+
+        private final boolean commit;
+
+        private FailingFilter(final boolean commit) {
+            this.commit = commit;
+        }
+
+        @Override
+        public void init(final FilterConfig filterConfig) {
+        }
+
+        @Override
+        public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain)
+                throws IOException {
+            if (commit) {
+                response.getOutputStream().write("partial".getBytes(StandardCharsets.UTF_8));
+                response.flushBuffer();
+            }
+            throw new IllegalStateException("fail");
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testHandledBeforeCommit() throws Exception {
+        start(HANDLER);
+
+        assertEquals("503 handled fail", get("/fail"));
+        assertEquals(1, metricRegistry.meter(EXCEPTIONS).getCount());
+    }
+
+    @Test
+    public void testRethrownWithoutHandler() throws Exception {
+        start(null);
+
+        final String response = get("/fail");
+        assertTrue(response, response.startsWith("500 "));
+        assertTrue(response, response.contains(IllegalStateException.class.getName()));
+        assertFalse(response, response.contains(NullPointerException.class.getName()));
+        assertEquals(1, metricRegistry.meter(EXCEPTIONS).getCount());
+    }
+
+    @Test
+    public void testRethrownAfterCommit() throws Exception {
+        start(HANDLER);
+
+        String response;
+        try {
+            response = get("/partial");
+        } catch (IOException e) {
+            response = e.toString();
+        }
+        assertFalse(response, response.contains("handled"));
+        assertEquals(1, metricRegistry.meter(EXCEPTIONS).getCount());
+    }
+
+    private void start(final ThrowableResponseHandler throwableResponseHandler) throws Exception {
+        final Injector injector = Guice.createInjector(
+                new StackServletModule(throwableResponseHandler, metricRegistry),
+                new ServletModule() {
+                    @Override
+                    protected void configureServlets() {
+                        filter("/fail").through(new FailingFilter(false));
+                        filter("/partial").through(new FailingFilter(true));
+                    }
+                });
+
+        final ServletContextHandler servletContextHandler = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        servletContextHandler.setContextPath("/");
+        servletContextHandler.addServlet(DefaultServlet.class, "/");
+        servletContextHandler.addFilter(new FilterHolder(injector.getInstance(GuiceFilter.class)), "/*",
+                EnumSet.allOf(DispatcherType.class));
+        servletContextHandler.addEventListener(new GuiceServletContextListener() {
+            @Override
+            protected Injector getInjector() {
+                return injector;
+            }
+        });
+
+        server = new Server(0);
+        server.setHandler(servletContextHandler);
+        server.start();
+    }
+
+    /**
+     * @return the status and the body of the response
+     */
+    private String get(final String path) throws IOException {
+        final int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+        try {
+            final int status = connection.getResponseCode();
+            try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                return status + " " + (body == null ? "" : new String(ByteStreams.toByteArray(body), StandardCharsets.UTF_8));
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package io.github.stack.guice.modules.swagger.handler.exception;
+
+import org.junit.Test;
+
+import javax.ws.rs.core.Response;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class CachedThrowableResponseHandlerTest {
+
+    private static final String ENTITY = "invalid input";
+
+    private final AtomicInteger delegated = new AtomicInteger();
+    private final CachedThrowableResponseHandler handler = new CachedThrowableResponseHandler(throwable -> {
+        delegated.incrementAndGet();
+        return Response.serverError().entity(throwable.getMessage()).build();
+    }).withResponse(IllegalArgumentException.class, Response.status(400).header("X-Error", "invalid").entity(ENTITY).build());
+
+    @Test
+    public void testCachedResponseIsReusedPerType() {
+        final Response first = handler.respond(new IllegalArgumentException("a"));
+        final Response second = handler.respond(new IllegalArgumentException("b"));
+
+        assertEquals(400, first.getStatus());
+        assertEquals("invalid", first.getMetadata().getFirst("X-Error"));
+        assertSame(ENTITY, first.getEntity());
+        assertSame(ENTITY, second.getEntity());
+        assertNotSame(first, second);
+        assertEquals(0, delegated.get());
+    }
+
+    @Test
+    public void testSubtypeUsesResponseOfSupertype() {
+        assertEquals(400, handler.respond(new NumberFormatException("x")).getStatus());
+        assertEquals(0, delegated.get());
+    }
+
+    @Test
+    public void testOtherTypesAreDelegated() {
+        final Response response = handler.respond(new IllegalStateException("state"));
+        assertEquals(500, response.getStatus());
+        assertEquals("state", response.getEntity());
+        assertEquals(1, delegated.get());
+
+        handler.respond(new IllegalStateException("state"));
+        assertEquals(2, delegated.get());
+    }
+
+    @Test
+    public void testNewResponseReplacesLookup() {
+        assertEquals(400, handler.respond(new NumberFormatException("x")).getStatus());
+
+        handler.withResponse(NumberFormatException.class, Response.status(422).build());
+        assertEquals(422, handler.respond(new NumberFormatException("x")).getStatus());
+        assertEquals(400, handler.respond(new IllegalArgumentException("x")).getStatus());
+    }
+}
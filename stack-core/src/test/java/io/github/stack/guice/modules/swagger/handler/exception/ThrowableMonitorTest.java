@@ -0,0 +1,90 @@
+package io.github.stack.guice.modules.swagger.handler.exception;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ThrowableMonitorTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final List<LoggingEvent> events = new CopyOnWriteArrayList<>();
+    private final AppenderSkeleton appender = new AppenderSkeleton() {
+        @Override
+        protected void append(final LoggingEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean requiresLayout() {
+            return false;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        Logger.getLogger(ThrowableMonitor.class).addAppender(appender);
+    }
+
+    @After
+    public void tearDown() {
+        Logger.getLogger(ThrowableMonitor.class).removeAppender(appender);
+    }
+
+    @Test
+    public void testLogsAreThrottledPerType() throws InterruptedException {
+        final ThrowableMonitor throwableMonitor = new ThrowableMonitor(metricRegistry, 2);
+        for (int i = 0; i < 100; i++) {
+            throwableMonitor.record(new IllegalStateException());
+        }
+        throwableMonitor.record(new IllegalArgumentException());
+
+        assertEquals(100, metricRegistry.meter("exceptions." + IllegalStateException.class.getName()).getCount());
+        assertEquals(1, metricRegistry.meter("exceptions." + IllegalArgumentException.class.getName()).getCount());
+        // the first of each type, and at most one more from the burst at 2 per second
+        assertTrue(String.valueOf(events.size()), events.size() >= 2 && events.size() <= 3);
+
+        Thread.sleep(600);
+        final int logged = events.size();
+        throwableMonitor.record(new IllegalStateException());
+        assertEquals(logged + 1, events.size());
+        final String message = events.get(logged).getRenderedMessage();
+        assertTrue(message, message.matches("Internal Server Error, \\d+ more java.lang.IllegalStateException not logged"));
+    }
+
+    @Test
+    public void testUnlimitedRateLogsEveryThrowable() {
+        final ThrowableMonitor throwableMonitor = new ThrowableMonitor(metricRegistry, 0);
+        for (int i = 0; i < 50; i++) {
+            throwableMonitor.record(new IllegalStateException());
+        }
+        assertEquals(50, events.size());
+    }
+
+    @Test
+    public void testStacklessExceptionIsLoggedWithoutStackTrace() {
+        final ThrowableMonitor throwableMonitor = new ThrowableMonitor(metricRegistry, 0);
+        throwableMonitor.record(new StacklessException("invalid"));
+        throwableMonitor.record(new IllegalStateException("state"));
+
+        assertEquals(0, new StacklessException("invalid").getStackTrace().length);
+        assertNull(events.get(0).getThrowableInformation());
+        assertTrue(events.get(0).getRenderedMessage().endsWith(": " + StacklessException.class.getName() + ": invalid"));
+        assertNotNull(events.get(1).getThrowableInformation());
+    }
+}
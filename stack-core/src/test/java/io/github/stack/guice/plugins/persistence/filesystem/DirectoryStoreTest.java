@@ -0,0 +1,78 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class DirectoryStoreTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCrashBeforeRenameKeepsOldObject() throws IOException {
+        final File directory = folder.getRoot();
+        final DirectoryStore store = new DirectoryStore(directory, Durability.PER_BATCH);
+        store.write("a", bytes("old"));
+
+        // a crash after writing part of the temporary file, before the rename
+        Files.write(new File(directory, ".a.tmp").toPath(), bytes("ne"));
+        Files.write(new File(directory, ".b.tmp").toPath(), bytes("n"));
+
+        final DirectoryStore recovered = new DirectoryStore(directory, Durability.PER_BATCH);
+        assertArrayEquals(bytes("old"), recovered.read("a"));
+        assertFalse(recovered.exists("b"));
+        assertEquals(Arrays.asList("a"), ids(recovered));
+        assertEquals(Arrays.asList("a"), Arrays.asList(directory.list()));
+    }
+
+    @Test
+    public void testWriteReplacesObject() throws IOException {
+        final DirectoryStore store = new DirectoryStore(folder.getRoot(), Durability.PER_OPERATION);
+        store.write("a", bytes("1"));
+        store.write("a", bytes("22"));
+
+        assertArrayEquals(bytes("22"), store.read("a"));
+        assertEquals(Arrays.asList("a"), Arrays.asList(folder.getRoot().list()));
+    }
+
+    @Test
+    public void testWriteAll() throws IOException {
+        for (final Durability durability : Durability.values()) {
+            final File directory = folder.newFolder(durability.name());
+            final DirectoryStore store = new DirectoryStore(directory, durability);
+            store.write("a", bytes("0"));
+            store.writeAll(ImmutableMap.of("a", bytes("1"), "b", bytes("2"), "c", bytes("3")));
+
+            final DirectoryStore reopened = new DirectoryStore(directory, durability);
+            assertArrayEquals(bytes("1"), reopened.read("a"));
+            assertArrayEquals(bytes("2"), reopened.read("b"));
+            assertArrayEquals(bytes("3"), reopened.read("c"));
+            assertEquals(Arrays.asList("a", "b", "c"), ids(reopened));
+        }
+    }
+
+    private static List<String> ids(final DirectoryStore store) throws IOException {
+        try (Stream<String> ids = store.ids()) {
+            return ids.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,378 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FileSystemManagerTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private FileSystemManager fileSystemManager;
+
+    public static class Item {
+
+        private int value;
+
+        public Item() {
+        }
+
+        public Item(final int value) {
+            this.value = value;
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        public void setValue(final int value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Runs an action on the I/O thread that serializes it.
+     */
+    public static class Callback {
+
+        private final Runnable action;
+
+        public Callback(final Runnable action) {
+            this.action = action;
+        }
+
+        public int getValue() {
+            action.run();
+            return 0;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (fileSystemManager != null) {
+            fileSystemManager.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testReadAllWhileIoThreadsAreBusyAndQueueIsFull() throws Exception {
+        fileSystemManager = open(1, 1);
+        final List<String> ids = createItems(100);
+
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletableFuture<String> busy = fileSystemManager.createAsync(new Callback(() -> {
+            blocked.countDown();
+            awaitQuietly(release);
+        }));
+        blocked.await();
+        final CompletableFuture<String> queued = fileSystemManager.createAsync(new Item(-1));
+        try {
+            assertItems(ids, fileSystemManager.readAll(ids, Item.class));
+        } finally {
+            release.countDown();
+        }
+        busy.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test(timeout = 10000)
+    public void testReadAllFromIoThread() throws Exception {
+        fileSystemManager = open(1, 16);
+        final List<String> ids = createItems(100);
+
+        final List<Map<String, Item>> result = new ArrayList<>();
+        fileSystemManager.createAsync(new Callback(() -> result.add(fileSystemManager.readAll(ids, Item.class))))
+                .get(5, TimeUnit.SECONDS);
+        assertItems(ids, result.get(0));
+    }
+
+    @Test(timeout = 10000)
+    public void testAsyncOperations() throws Exception {
+        fileSystemManager = open(2, 16);
+
+        final String id = fileSystemManager.createAsync(new Item(1)).get(5, TimeUnit.SECONDS);
+        assertEquals(1, fileSystemManager.readAsync(id, Item.class).get(5, TimeUnit.SECONDS).getValue());
+        fileSystemManager.updateAsync(id, new Item(2)).get(5, TimeUnit.SECONDS);
+        final long version = fileSystemManager.getVersion(id);
+        assertFalse(fileSystemManager.compareAndSetAsync(id, version - 1, new Item(3)).get(5, TimeUnit.SECONDS));
+        assertTrue(fileSystemManager.compareAndSetAsync(id, version, new Item(4)).get(5, TimeUnit.SECONDS));
+        assertEquals(4, fileSystemManager.read(id, Item.class).getValue());
+        fileSystemManager.deleteAsync(id).get(5, TimeUnit.SECONDS);
+        assertTrue(fileSystemManager.compareAndSetAsync(id, FileSystemManager.ABSENT, new Item(5)).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void testAsyncRejectedWhenIoQueueIsFull() throws Exception {
+        fileSystemManager = open(1, 1);
+        final String id = fileSystemManager.create(new Item(1));
+
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletableFuture<String> busy = fileSystemManager.createAsync(new Callback(() -> {
+            blocked.countDown();
+            awaitQuietly(release);
+        }));
+        blocked.await();
+        final CompletableFuture<Void> queued = fileSystemManager.updateAsync(id, new Item(2));
+        final CompletableFuture<Item> rejected = fileSystemManager.readAsync(id, Item.class);
+        try {
+            assertTrue(rejected.isCompletedExceptionally());
+            try {
+                rejected.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        } finally {
+            release.countDown();
+        }
+
+        busy.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+        assertEquals(2, fileSystemManager.readAsync(id, Item.class).get(5, TimeUnit.SECONDS).getValue());
+    }
+
+    @Test
+    public void testVersions() {
+        fileSystemManager = open(1, 16);
+        final String id = fileSystemManager.create(new Item(1));
+
+        final Versioned<Item> read = fileSystemManager.readVersioned(id, Item.class);
+        assertEquals(1, read.getObject().getValue());
+        assertTrue(fileSystemManager.compareAndSet(id, read.getVersion(), new Item(2)));
+        assertFalse(fileSystemManager.compareAndSet(id, read.getVersion(), new Item(3)));
+
+        final long updated = fileSystemManager.getVersion(id);
+        assertTrue(updated > read.getVersion());
+        fileSystemManager.delete(id);
+        assertFalse(fileSystemManager.compareAndSet(id, updated, new Item(4)));
+        assertTrue(fileSystemManager.compareAndSet(id, FileSystemManager.ABSENT, new Item(5)));
+        assertTrue(fileSystemManager.getVersion(id) > updated);
+        assertEquals(5, fileSystemManager.read(id, Item.class).getValue());
+    }
+
+    @Test
+    public void testWriteBehindReadReturnsCopy() {
+        fileSystemManager = new FileSystemModule(folder.getRoot())
+                .withWriteBehind(1, TimeUnit.HOURS, 100)
+                .fileSystemManagerProvider();
+        final String id = fileSystemManager.create(new Item(1));
+
+        final Item updated = new Item(2);
+        fileSystemManager.update(id, updated);
+        updated.setValue(3);
+        final Item read = fileSystemManager.read(id, Item.class);
+        assertEquals(2, read.getValue());
+        read.setValue(4);
+        assertEquals(2, fileSystemManager.read(id, Item.class).getValue());
+
+        fileSystemManager.flush();
+        assertEquals(2, fileSystemManager.read(id, Item.class).getValue());
+    }
+
+    @Test
+    public void testScanEmptyStore() throws IOException {
+        fileSystemManager = open(1, 16);
+
+        try (Stream<Map.Entry<String, Item>> scan = fileSystemManager.scan(Item.class)) {
+            assertEquals(0, scan.count());
+        }
+        try (Stream<Map.Entry<String, Item>> scan = fileSystemManager.scan(Item.class, 10)) {
+            assertEquals(0, scan.count());
+        }
+        final Page<Item> page = fileSystemManager.scanPage(Item.class, null, 5);
+        assertTrue(page.getObjects().isEmpty());
+        assertNull(page.getCursor());
+        assertEquals("{}", write(new ScanOutput(fileSystemManager.scan(Item.class))));
+    }
+
+    @Test
+    public void testScanPageEndsExactlyOnLastId() {
+        fileSystemManager = open(1, 16);
+        final List<String> ids = new ArrayList<>(createItems(6));
+        Collections.sort(ids);
+
+        final Page<Item> first = fileSystemManager.scanPage(Item.class, null, 3);
+        assertEquals(ids.subList(0, 3), new ArrayList<>(first.getObjects().keySet()));
+        assertEquals(ids.get(2), first.getCursor());
+
+        final Page<Item> last = fileSystemManager.scanPage(Item.class, first.getCursor(), 3);
+        assertEquals(ids.subList(3, 6), new ArrayList<>(last.getObjects().keySet()));
+        assertNull(last.getCursor());
+    }
+
+    @Test
+    public void testScanPageContinuesAfterConcurrentDeletes() {
+        fileSystemManager = open(1, 16);
+        final List<String> ids = new ArrayList<>(createItems(10));
+        Collections.sort(ids);
+
+        final Page<Item> first = fileSystemManager.scanPage(Item.class, null, 4);
+        assertEquals(ids.get(3), first.getCursor());
+        // the cursor itself, an id already returned and one of the next page disappear between pages
+        fileSystemManager.delete(ids.get(3));
+        fileSystemManager.delete(ids.get(1));
+        fileSystemManager.delete(ids.get(4));
+
+        final TreeSet<String> seen = new TreeSet<>(first.getObjects().keySet());
+        String cursor = first.getCursor();
+        while (cursor != null) {
+            final Page<Item> page = fileSystemManager.scanPage(Item.class, cursor, 4);
+            for (final String id : page.getObjects().keySet()) {
+                assertTrue(id.compareTo(cursor) > 0);
+                assertTrue(seen.add(id));
+            }
+            cursor = page.getCursor();
+        }
+
+        final TreeSet<String> expected = new TreeSet<>(ids);
+        expected.remove(ids.get(4));
+        assertEquals(expected, seen);
+    }
+
+    @Test
+    public void testScanSkipsObjectsDeletedDuringScan() {
+        fileSystemManager = open(1, 16);
+        final List<String> ids = createItems(10);
+
+        try (Stream<Map.Entry<String, Item>> scan = fileSystemManager.scan(Item.class)) {
+            final Iterator<Map.Entry<String, Item>> iterator = scan.iterator();
+            final String first = iterator.next().getKey();
+            ids.stream().filter(id -> !id.equals(first)).forEach(fileSystemManager::delete);
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test
+    public void testScanOutputWritesAllObjectsAndClosesStream() throws IOException {
+        fileSystemManager = open(1, 16);
+        final List<String> ids = createItems(5);
+
+        final AtomicBoolean closed = new AtomicBoolean();
+        final Map<String, Item> written = parse(write(new ScanOutput(
+                fileSystemManager.scan(Item.class, 2).onClose(() -> closed.set(true)))));
+        assertEquals(new TreeSet<>(ids), written.keySet());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i, written.get(ids.get(i)).getValue());
+        }
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void testScanOutputOfStreamClosedEarly() throws IOException {
+        fileSystemManager = open(1, 16);
+        createItems(5);
+
+        final AtomicBoolean closed = new AtomicBoolean();
+        final Map<String, Item> written = parse(write(new ScanOutput(
+                fileSystemManager.scan(Item.class).onClose(() -> closed.set(true)).limit(2))));
+        assertEquals(2, written.size());
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void testScanOutputOfFailedScanIsNotTerminated() throws IOException {
+        fileSystemManager = open(1, 16);
+        createItems(5);
+
+        final AtomicBoolean closed = new AtomicBoolean();
+        final Stream<Map.Entry<String, Item>> failing = fileSystemManager.scan(Item.class)
+                .onClose(() -> closed.set(true))
+                .peek(new Consumer<Map.Entry<String, Item>>() {
+                    private int count;
+
+                    @Override
+                    public void accept(final Map.Entry<String, Item> entry) {
+                        if (++count == 3) {
+                            throw new IllegalStateException("scan failed");
+                        }
+                    }
+                });
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            new ScanOutput(failing).write(output);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("scan failed", e.getMessage());
+        }
+        assertTrue(closed.get());
+        final String json = new String(output.toByteArray(), StandardCharsets.UTF_8);
+        assertFalse(json, json.endsWith("}}"));
+        try {
+            parse(json);
+            fail(json);
+        } catch (IOException e) {
+            // truncated
+        }
+    }
+
+    private FileSystemManager open(final int ioThreads, final int ioQueueCapacity) {
+        return new FileSystemModule(folder.getRoot())
+                .withIoThreads(ioThreads)
+                .withIoQueueCapacity(ioQueueCapacity)
+                .fileSystemManagerProvider();
+    }
+
+    private List<String> createItems(final int count) {
+        final List<Item> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(new Item(i));
+        }
+        return fileSystemManager.createAll(items);
+    }
+
+    private static void assertItems(final List<String> ids, final Map<String, Item> items) {
+        assertEquals(ids, new ArrayList<>(items.keySet()));
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i, items.get(ids.get(i)).getValue());
+        }
+    }
+
+    private static String write(final ScanOutput scanOutput) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        scanOutput.write(output);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, Item> parse(final String json) throws IOException {
+        return new ObjectMapper().readValue(json, new TypeReference<Map<String, Item>>() {
+        });
+    }
+
+    private static void awaitQuietly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LogStructuredStoreTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private LogStructuredStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.getRoot();
+        store = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        store.write("a", bytes("1"));
+        store.write("b", bytes("2"));
+        store.write("a", bytes("3"));
+        store.delete("b");
+        store.write("c", bytes("4"));
+
+        reopen();
+
+        assertArrayEquals(bytes("3"), store.read("a"));
+        assertFalse(store.exists("b"));
+        assertArrayEquals(bytes("4"), store.read("c"));
+        assertEquals(2, ids().size());
+    }
+
+    @Test
+    public void testTornTailIsTruncated() throws IOException {
+        store.write("a", bytes("1"));
+        store.write("b", bytes("2"));
+        store.close();
+
+        final File segment = segment();
+        final long validLength = segment.length();
+        final ByteBuffer record = LogStructuredStore.encode(LogStructuredStore.PUT, bytes("c"), bytes("3"));
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(validLength);
+            file.write(record.array(), 0, record.remaining() - 3);
+        }
+
+        store = open();
+
+        assertArrayEquals(bytes("1"), store.read("a"));
+        assertArrayEquals(bytes("2"), store.read("b"));
+        assertFalse(store.exists("c"));
+        assertEquals(validLength, segment.length());
+
+        // appends continue after the valid prefix
+        store.write("d", bytes("4"));
+        reopen();
+        assertArrayEquals(bytes("4"), store.read("d"));
+        assertEquals(3, ids().size());
+    }
+
+    @Test
+    public void testCorruptTailIsTruncated() throws IOException {
+        store.write("a", bytes("1"));
+        store.write("b", bytes("2"));
+        store.close();
+
+        final File segment = segment();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(file.length() - 1);
+            final int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xff);
+        }
+
+        store = open();
+
+        assertArrayEquals(bytes("1"), store.read("a"));
+        assertFalse(store.exists("b"));
+    }
+
+    @Test
+    public void testInterruptedReadDoesNotBreakStore() throws IOException {
+        store.write("a", bytes("1"));
+
+        Thread.currentThread().interrupt();
+        try {
+            store.read("a");
+            fail();
+        } catch (ClosedByInterruptException e) {
+            // expected
+        } finally {
+            Thread.interrupted();
+        }
+
+        store.write("b", bytes("2"));
+        assertArrayEquals(bytes("1"), store.read("a"));
+        assertArrayEquals(bytes("2"), store.read("b"));
+    }
+
+    @Test
+    public void testInterruptedWriteDoesNotBreakStore() throws IOException {
+        Thread.currentThread().interrupt();
+        try {
+            store.write("a", bytes("1"));
+        } finally {
+            Thread.interrupted();
+        }
+
+        store.write("b", bytes("2"));
+        reopen();
+        assertArrayEquals(bytes("1"), store.read("a"));
+        assertArrayEquals(bytes("2"), store.read("b"));
+    }
+
+    @Test
+    public void testCompactionKeepsLatestValues() throws Exception {
+        store.close();
+        store = new LogStructuredStore(directory, Durability.NONE, 64, 0.5, 10, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 100; i++) {
+            store.write("a", bytes("a" + i));
+            store.write("b" + (i % 10), bytes("b" + i));
+        }
+        store.delete("b0");
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (directory.list().length > 20 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(directory.list().length <= 20);
+
+        reopen();
+        assertArrayEquals(bytes("a99"), store.read("a"));
+        assertFalse(store.exists("b0"));
+        assertArrayEquals(bytes("b99"), store.read("b9"));
+        assertEquals(10, ids().size());
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void testDeleteMissing() throws IOException {
+        store.delete("a");
+    }
+
+    private LogStructuredStore open() throws IOException {
+        return new LogStructuredStore(directory, Durability.PER_BATCH, 1024 * 1024, 0.5, 1, TimeUnit.HOURS);
+    }
+
+    private void reopen() throws IOException {
+        store.close();
+        store = open();
+    }
+
+    private File segment() {
+        final File[] segments = directory.listFiles((dir, name) -> name.endsWith(".log"));
+        assertEquals(1, segments.length);
+        return segments[0];
+    }
+
+    private List<String> ids() throws IOException {
+        try (Stream<String> ids = store.ids()) {
+            return ids.collect(Collectors.toList());
+        }
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
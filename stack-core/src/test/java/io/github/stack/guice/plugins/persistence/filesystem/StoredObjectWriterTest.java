@@ -0,0 +1,216 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.servlet.GuiceFilter;
+import com.google.inject.servlet.GuiceServletContextListener;
+import io.github.stack.guice.modules.swagger.StackServletModule;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.servlet.DefaultServlet;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.servlet.DispatcherType;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.EnumSet;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StoredObjectWriterTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Server server;
+    private FileSystemManager fileSystemManager;
+
+    public static class Document {
+
+        private String text;
+
+        public Document() {
+        }
+
+        public Document(final String text) {
+            this.text = text;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public void setText(final String text) {
+            this.text = text;
+        }
+    }
+
+    @Path("/raw")
+    public static class RawResource {
+
+        @Inject
+        private FileSystemManager fileSystemManager;
+
+        @GET
+        @Path("{id}")
+        @Produces(MediaType.APPLICATION_JSON)
+        public StoredObject get(@PathParam("id") final String id) {
+            return fileSystemManager.readRaw(id);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        fileSystemManager.close();
+    }
+
+    @Test
+    public void testStoredObjectBytes() throws Exception {
+        start(false);
+        final String id = fileSystemManager.create(new Document("small"));
+
+        final StoredObject storedObject = fileSystemManager.readRaw(id);
+        final byte[] bytes = bytes(storedObject);
+        assertEquals(storedObject.getLength(), bytes.length);
+        assertEquals(MediaType.APPLICATION_JSON, storedObject.getMediaType());
+        assertEquals("{\"text\":\"small\"}", new String(bytes, "UTF-8"));
+        // writing does not consume the object
+        assertArrayEquals(bytes, bytes(storedObject));
+    }
+
+    @Test
+    public void testSmallObject() throws Exception {
+        start(false);
+        assertResponse(fileSystemManager.create(new Document("small")));
+    }
+
+    @Test
+    public void testMappedObject() throws Exception {
+        start(false);
+        assertResponse(fileSystemManager.create(new Document(Strings.repeat("large", FileSystemStore.MAP_THRESHOLD))));
+    }
+
+    @Test
+    public void testMappedObjectCompressed() throws Exception {
+        start(true);
+        final String id = fileSystemManager.create(new Document(Strings.repeat("large", FileSystemStore.MAP_THRESHOLD)));
+        final byte[] expected = bytes(fileSystemManager.readRaw(id));
+
+        final HttpURLConnection connection = open(id);
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        try {
+            assertEquals(200, connection.getResponseCode());
+            assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+            final byte[] compressed;
+            try (InputStream body = connection.getInputStream()) {
+                compressed = ByteStreams.toByteArray(body);
+            }
+            assertTrue(compressed.length < expected.length);
+            final String contentLength = connection.getHeaderField("Content-Length");
+            if (contentLength != null) {
+                assertEquals(compressed.length, Integer.parseInt(contentLength));
+            }
+            try (InputStream body = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+                assertArrayEquals(expected, ByteStreams.toByteArray(body));
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void testNotCompressedWithoutAcceptEncoding() throws Exception {
+        start(true);
+        assertResponse(fileSystemManager.create(new Document(Strings.repeat("large", FileSystemStore.MAP_THRESHOLD))));
+    }
+
+    private void assertResponse(final String id) throws IOException {
+        final byte[] expected = bytes(fileSystemManager.readRaw(id));
+
+        final HttpURLConnection connection = open(id);
+        try {
+            assertEquals(200, connection.getResponseCode());
+            assertNull(connection.getHeaderField("Content-Encoding"));
+            assertEquals(expected.length, Integer.parseInt(connection.getHeaderField("Content-Length")));
+            assertTrue(connection.getContentType().startsWith(MediaType.APPLICATION_JSON));
+            try (InputStream body = connection.getInputStream()) {
+                assertArrayEquals(expected, ByteStreams.toByteArray(body));
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void start(final boolean compression) throws Exception {
+        final Injector injector = Guice.createInjector(
+                new StackServletModule(null, new MetricRegistry()),
+                new FileSystemModule(folder.getRoot()),
+                new AbstractModule() {
+                    @Override
+                    protected void configure() {
+                        bind(RawResource.class);
+                    }
+                });
+        fileSystemManager = injector.getInstance(FileSystemManager.class);
+
+        final ServletContextHandler servletContextHandler = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        servletContextHandler.setContextPath("/");
+        servletContextHandler.addServlet(DefaultServlet.class, "/");
+        servletContextHandler.addFilter(new FilterHolder(injector.getInstance(GuiceFilter.class)), "/*",
+                EnumSet.allOf(DispatcherType.class));
+        servletContextHandler.addEventListener(new GuiceServletContextListener() {
+            @Override
+            protected Injector getInjector() {
+                return injector;
+            }
+        });
+
+        Handler handler = servletContextHandler;
+        if (compression) {
+            final GzipHandler gzipHandler = new GzipHandler();
+            gzipHandler.setIncludedMimeTypes(MediaType.APPLICATION_JSON);
+            gzipHandler.setHandler(servletContextHandler);
+            handler = gzipHandler;
+        }
+        server = new Server(0);
+        server.setHandler(handler);
+        server.start();
+    }
+
+    private HttpURLConnection open(final String id) throws IOException {
+        final int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        return (HttpURLConnection) new URL("http://localhost:" + port + "/raw/" + id).openConnection();
+    }
+
+    private static byte[] bytes(final StoredObject storedObject) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        storedObject.write(output);
+        return output.toByteArray();
+    }
+}
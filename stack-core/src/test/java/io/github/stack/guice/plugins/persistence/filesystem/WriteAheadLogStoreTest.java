@@ -0,0 +1,107 @@
+package io.github.stack.guice.plugins.persistence.filesystem;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WriteAheadLogStoreTest {
+
+    private static final long NEVER = TimeUnit.DAYS.toMillis(1);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplayAfterCrash() throws IOException {
+        final File directory = folder.getRoot();
+        final WriteAheadLogStore crashed = open(directory, 1024 * 1024);
+        crashed.write("a", bytes("1"));
+        crashed.writeAll(ImmutableMap.of("b", bytes("2"), "c", bytes("3")));
+        crashed.write("a", bytes("4"));
+        crashed.delete("b");
+        // nothing is applied before a checkpoint
+        assertFalse(new File(directory, "a").exists());
+
+        final WriteAheadLogStore recovered = open(directory, 1024 * 1024);
+        try {
+            assertArrayEquals(bytes("4"), recovered.read("a"));
+            assertFalse(recovered.exists("b"));
+            assertArrayEquals(bytes("3"), recovered.read("c"));
+            assertTrue(new File(directory, "a").exists());
+        } finally {
+            recovered.close();
+        }
+    }
+
+    @Test
+    public void testTornTailIsIgnored() throws IOException {
+        final File directory = folder.getRoot();
+        final WriteAheadLogStore crashed = open(directory, 1024 * 1024);
+        crashed.write("a", bytes("1"));
+        crashed.write("b", bytes("2"));
+
+        final File[] logs = new File(directory, ".wal").listFiles();
+        assertEquals(1, logs.length);
+        final ByteBuffer record = LogStructuredStore.encode(LogStructuredStore.PUT, bytes("c"), bytes("3"));
+        try (RandomAccessFile file = new RandomAccessFile(logs[0], "rw")) {
+            file.seek(file.length());
+            file.write(record.array(), 0, record.remaining() - 1);
+        }
+
+        final WriteAheadLogStore recovered = open(directory, 1024 * 1024);
+        try {
+            assertArrayEquals(bytes("1"), recovered.read("a"));
+            assertArrayEquals(bytes("2"), recovered.read("b"));
+            assertFalse(recovered.exists("c"));
+            assertEquals(0, new File(directory, ".wal").listFiles((dir, name) -> new File(dir, name).length() > 0).length);
+        } finally {
+            recovered.close();
+        }
+    }
+
+    @Test
+    public void testCheckpointSizeBoundsLog() throws IOException {
+        final File directory = folder.getRoot();
+        final long checkpointSize = 1024;
+        final WriteAheadLogStore store = open(directory, checkpointSize);
+        try {
+            final byte[] value = new byte[100];
+            for (int i = 0; i < 500; i++) {
+                store.write("id" + (i % 50), value);
+                // the log being checkpointed and the active log, each at most twice the checkpoint size plus a record
+                assertTrue(logSize(directory) <= 4 * checkpointSize + 2 * 200);
+            }
+            assertEquals(50, directory.list((dir, name) -> name.startsWith("id")).length);
+        } finally {
+            store.close();
+        }
+    }
+
+    private static WriteAheadLogStore open(final File directory, final long checkpointSize) throws IOException {
+        return new WriteAheadLogStore(new DirectoryStore(directory, Durability.PER_BATCH), directory, Durability.PER_BATCH,
+                checkpointSize, NEVER, TimeUnit.MILLISECONDS);
+    }
+
+    private static long logSize(final File directory) {
+        final File[] logs = new File(directory, ".wal").listFiles();
+        return logs == null ? 0 : Arrays.stream(logs).mapToLong(File::length).sum();
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,106 @@
+package io.github.stack.guice.plugins.services.scheduledservice;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveSchedulerTest {
+
+    private static final long PERIOD = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testStartToStartPeriod() {
+        final AdaptiveScheduler scheduler = AdaptiveScheduler.every(1, TimeUnit.SECONDS)
+                .withInitialDelay(5, TimeUnit.SECONDS)
+                .withJitter(0);
+        assertEquals(5 * PERIOD, scheduler.nextDelay());
+
+        scheduler.completed(PERIOD / 4, false);
+        assertEquals(PERIOD - PERIOD / 4, scheduler.nextDelay());
+    }
+
+    @Test
+    public void testOverrunPausesForTheDuration() {
+        final AdaptiveScheduler scheduler = started(AdaptiveScheduler.every(1, TimeUnit.SECONDS).withJitter(0));
+
+        scheduler.completed(3 * PERIOD, false);
+        assertEquals(3 * PERIOD, scheduler.nextDelay());
+
+        scheduler.completed(100 * PERIOD, false);
+        assertEquals(16 * PERIOD, scheduler.nextDelay());
+    }
+
+    @Test
+    public void testFailuresBackOffUpToMaxPeriod() {
+        final AdaptiveScheduler scheduler = started(AdaptiveScheduler.every(1, TimeUnit.SECONDS)
+                .withMaxPeriod(10, TimeUnit.SECONDS)
+                .withJitter(0));
+
+        final long[] expected = {2, 4, 8, 10, 10};
+        for (final long delay : expected) {
+            scheduler.completed(0, true);
+            assertEquals(delay * PERIOD, scheduler.nextDelay());
+        }
+        for (int i = 0; i < 100; i++) {
+            scheduler.completed(0, true);
+        }
+        assertEquals(10 * PERIOD, scheduler.nextDelay());
+    }
+
+    @Test
+    public void testSuccessResetsBackoff() {
+        final AdaptiveScheduler scheduler = started(AdaptiveScheduler.every(1, TimeUnit.SECONDS).withJitter(0));
+        for (int i = 0; i < 3; i++) {
+            scheduler.completed(0, true);
+        }
+        assertEquals(8 * PERIOD, scheduler.nextDelay());
+
+        scheduler.completed(PERIOD / 2, false);
+        assertEquals(PERIOD / 2, scheduler.nextDelay());
+        scheduler.completed(0, true);
+        assertEquals(2 * PERIOD, scheduler.nextDelay());
+    }
+
+    @Test
+    public void testResetStartsOver() {
+        final AdaptiveScheduler scheduler = AdaptiveScheduler.every(1, TimeUnit.SECONDS)
+                .withInitialDelay(3, TimeUnit.SECONDS)
+                .withJitter(0);
+        assertEquals(3 * PERIOD, scheduler.nextDelay());
+        scheduler.completed(0, true);
+        scheduler.reset();
+
+        assertEquals(3 * PERIOD, scheduler.nextDelay());
+        assertEquals(PERIOD, scheduler.nextDelay());
+    }
+
+    @Test
+    public void testJitterStaysWithinBounds() {
+        final AdaptiveScheduler scheduler = AdaptiveScheduler.every(1, TimeUnit.SECONDS).withJitter(0.5);
+        final long first = scheduler.nextDelay();
+        assertTrue(first >= 0 && first <= PERIOD / 2);
+
+        for (int i = 0; i < 1000; i++) {
+            scheduler.completed(PERIOD * 9 / 10, false);
+            final long delay = scheduler.nextDelay();
+            assertTrue(String.valueOf(delay), delay >= 0 && delay <= PERIOD * 3 / 2 - PERIOD * 9 / 10);
+
+            scheduler.completed(0, false);
+            final long full = scheduler.nextDelay();
+            assertTrue(String.valueOf(full), full >= PERIOD / 2 && full <= PERIOD * 3 / 2);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxPeriodShorterThanPeriod() {
+        AdaptiveScheduler.every(1, TimeUnit.SECONDS).withMaxPeriod(500, TimeUnit.MILLISECONDS);
+    }
+
+    private static AdaptiveScheduler started(final AdaptiveScheduler scheduler) {
+        assertEquals(0, scheduler.nextDelay());
+        return scheduler;
+    }
+}
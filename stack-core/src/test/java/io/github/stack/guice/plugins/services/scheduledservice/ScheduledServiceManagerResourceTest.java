@@ -0,0 +1,87 @@
+package io.github.stack.guice.plugins.services.scheduledservice;
+
+import com.google.common.util.concurrent.AbstractScheduledService.Scheduler;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScheduledServiceManagerResourceTest {
+
+    private ScheduledServiceManager scheduledServiceManager;
+
+    /**
+     * Fails every other iteration, sleeping a little in each.
+     */
+    public static class FlakyService extends AbstractScheduledService {
+
+        private final AtomicInteger runs = new AtomicInteger();
+
+        @Override
+        public void runOneIteration() {
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (runs.incrementAndGet() % 2 == 0) {
+                throw new IllegalStateException("run " + runs.get());
+            }
+        }
+
+        @Override
+        public Scheduler scheduler() {
+            return AdaptiveScheduler.every(5, TimeUnit.MILLISECONDS)
+                    .withMaxPeriod(5, TimeUnit.MILLISECONDS)
+                    .withJitter(0);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (scheduledServiceManager != null) {
+            scheduledServiceManager.stopAll();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testStatisticsAndRecentRuns() throws InterruptedException, TimeoutException {
+        final Injector injector = Guice.createInjector(new ScheduledServiceModule().withRunHistorySize(3), new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(FlakyService.class).toInstance(new FlakyService());
+            }
+        });
+        scheduledServiceManager = injector.getInstance(ScheduledServiceManager.class);
+        final ScheduledServiceManagerResource resource = injector.getInstance(ScheduledServiceManagerResource.class);
+        final String name = FlakyService.class.getSimpleName();
+
+        while (resource.getServiceStatistics().get(name).getDurations().getCount() < 10) {
+            Thread.sleep(5);
+        }
+        scheduledServiceManager.stop(name);
+        scheduledServiceManager.getService(name).get().awaitTerminated(5, TimeUnit.SECONDS);
+
+        final ServiceStatistics statistics = resource.getServiceStatistics().get(name);
+        final long runs = statistics.getSuccesses() + statistics.getFailures();
+        assertEquals(runs, statistics.getDurations().getCount());
+        assertEquals(runs / 2, statistics.getFailures());
+        assertTrue(statistics.getDurations().getMin() >= 2);
+
+        final List<ServiceRun> recentRuns = resource.getRecentRuns(name);
+        assertEquals(3, recentRuns.size());
+        assertTrue(recentRuns.get(0).getStartedAt() >= recentRuns.get(1).getStartedAt());
+        assertTrue(recentRuns.stream().anyMatch(run -> run.getFailure() != null && run.getFailure().startsWith("java.lang.IllegalStateException: run ")));
+        assertTrue(recentRuns.stream().anyMatch(run -> run.getFailure() == null));
+        assertTrue(resource.getRecentRuns("missing").isEmpty());
+    }
+}
@@ -0,0 +1,135 @@
+package io.github.stack.guice.plugins.services.scheduledservice;
+
+import com.google.common.util.concurrent.AbstractScheduledService.Scheduler;
+import com.google.common.util.concurrent.Service;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScheduledServiceManagerTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ScheduledServiceManager scheduledServiceManager;
+
+    public static class HealthyService extends AbstractScheduledService {
+
+        @Override
+        public void runOneIteration() {
+        }
+
+        @Override
+        public Scheduler scheduler() {
+            return Scheduler.newFixedDelaySchedule(0, 10, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Hangs in {@link #startUp()} until released.
+     */
+    public static class HangingStartService extends HealthyService {
+
+        private final CountDownLatch release;
+
+        HangingStartService(final CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        protected void startUp() throws InterruptedException {
+            release.await(10, TimeUnit.SECONDS);
+        }
+    }
+
+    public static class OtherHangingStartService extends HangingStartService {
+
+        OtherHangingStartService(final CountDownLatch release) {
+            super(release);
+        }
+    }
+
+    /**
+     * Hangs in {@link #shutDown()} until released.
+     */
+    public static class HangingStopService extends HealthyService {
+
+        private final CountDownLatch release;
+
+        HangingStopService(final CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        protected void shutDown() throws InterruptedException {
+            release.await(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (scheduledServiceManager != null) {
+            scheduledServiceManager.stopAll();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testStartAllHonorsServiceTimeout() {
+        manager(200, 5000, new HealthyService(), new HangingStartService(release), new HangingStopService(release));
+
+        final long begin = System.nanoTime();
+        assertFalse(scheduledServiceManager.startAll());
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        assertTrue("waited " + elapsed + " ms", elapsed >= 150 && elapsed < 2000);
+        assertEquals(Service.State.STARTING, state(HangingStartService.class));
+        assertEquals(Service.State.RUNNING, state(HealthyService.class));
+        assertEquals(Service.State.RUNNING, state(HangingStopService.class));
+    }
+
+    @Test(timeout = 10000)
+    public void testStopAllHonorsServiceTimeout() {
+        manager(200, 5000, new HealthyService(), new HangingStopService(release));
+        assertTrue(scheduledServiceManager.startAll());
+
+        final long begin = System.nanoTime();
+        assertFalse(scheduledServiceManager.stopAll());
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        assertTrue("waited " + elapsed + " ms", elapsed >= 150 && elapsed < 2000);
+        assertEquals(Service.State.STOPPING, state(HangingStopService.class));
+        assertEquals(Service.State.TERMINATED, state(HealthyService.class));
+    }
+
+    @Test(timeout = 10000)
+    public void testStartAllHonorsTotalTimeout() {
+        manager(3000, 300, new HangingStartService(release), new OtherHangingStartService(release), new HealthyService());
+
+        final long begin = System.nanoTime();
+        assertFalse(scheduledServiceManager.startAll());
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        // both hanging services share the total timeout rather than each waiting for the service timeout
+        assertTrue("waited " + elapsed + " ms", elapsed >= 250 && elapsed < 2000);
+        assertEquals(Service.State.STARTING, state(HangingStartService.class));
+        assertEquals(Service.State.STARTING, state(OtherHangingStartService.class));
+        assertEquals(Service.State.RUNNING, state(HealthyService.class));
+    }
+
+    private void manager(final long serviceTimeout, final long totalTimeout, final AbstractScheduledService... services) {
+        scheduledServiceManager = new ScheduledServiceManager(TimeUnit.MILLISECONDS.toNanos(serviceTimeout),
+                TimeUnit.MILLISECONDS.toNanos(totalTimeout));
+        for (final AbstractScheduledService service : services) {
+            scheduledServiceManager.addService(service);
+        }
+    }
+
+    private Service.State state(final Class<? extends AbstractScheduledService> service) {
+        return scheduledServiceManager.getServiceStates().get(service.getSimpleName());
+    }
+}
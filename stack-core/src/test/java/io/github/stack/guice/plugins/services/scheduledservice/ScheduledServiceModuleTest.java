@@ -0,0 +1,140 @@
+package io.github.stack.guice.plugins.services.scheduledservice;
+
+import com.google.common.util.concurrent.AbstractScheduledService.Scheduler;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScheduledServiceModuleTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ScheduledServiceManager scheduledServiceManager;
+
+    /**
+     * Blocks every iteration until released, and tracks how many of its iterations run at the same time.
+     */
+    public static class SlowService extends AbstractScheduledService {
+
+        private final CountDownLatch release;
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxRunning = new AtomicInteger();
+        private final AtomicInteger started = new AtomicInteger();
+
+        SlowService(final CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void runOneIteration() {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            started.incrementAndGet();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        @Override
+        public Scheduler scheduler() {
+            return Scheduler.newFixedDelaySchedule(0, 10, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static class FastService extends AbstractScheduledService {
+
+        private final AtomicInteger runs = new AtomicInteger();
+
+        @Override
+        public void runOneIteration() {
+            runs.incrementAndGet();
+        }
+
+        @Override
+        public Scheduler scheduler() {
+            return Scheduler.newFixedDelaySchedule(0, 10, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (scheduledServiceManager != null) {
+            scheduledServiceManager.stopAll();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testSlowServiceDoesNotStarveOthers() throws InterruptedException {
+        final SlowService slow = new SlowService(release);
+        final FastService fast = new FastService();
+        start(new ScheduledServiceModule().withThreads(2), slow, fast);
+
+        awaitStarted(slow, 1);
+        for (int i = 0; i < 20; i++) {
+            scheduledServiceManager.runOnce(SlowService.class.getSimpleName());
+        }
+        final int runs = fast.runs.get();
+        Thread.sleep(300);
+
+        assertTrue("fast service ran " + (fast.runs.get() - runs) + " times", fast.runs.get() - runs >= 5);
+        assertEquals(1, slow.maxRunning.get());
+        assertEquals(1, slow.started.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testMaxConcurrencyPerService() throws InterruptedException {
+        final SlowService slow = new SlowService(release);
+        final FastService fast = new FastService();
+        start(new ScheduledServiceModule().withThreads(4).withMaxConcurrencyPerService(2), slow, fast);
+
+        awaitStarted(slow, 1);
+        for (int i = 0; i < 20; i++) {
+            scheduledServiceManager.runOnce(SlowService.class.getSimpleName());
+            Thread.sleep(5);
+        }
+        awaitStarted(slow, 2);
+        Thread.sleep(100);
+
+        // the scheduled iteration and one run-once hold both permits; further run-once requests wait for them
+        assertEquals(2, slow.maxRunning.get());
+        assertEquals(2, slow.started.get());
+        assertTrue(fast.runs.get() > 0);
+
+        release.countDown();
+        awaitStarted(slow, 3);
+        assertEquals(2, slow.maxRunning.get());
+    }
+
+    private void start(final ScheduledServiceModule module, final AbstractScheduledService... services) {
+        scheduledServiceManager = Guice.createInjector(module, new AbstractModule() {
+            @Override
+            protected void configure() {
+                for (final AbstractScheduledService service : services) {
+                    bindInstance(service);
+                }
+            }
+
+            @SuppressWarnings("unchecked")
+            private <T extends AbstractScheduledService> void bindInstance(final T service) {
+                bind((Class<T>) service.getClass()).toInstance(service);
+            }
+        }).getInstance(ScheduledServiceManager.class);
+    }
+
+    private static void awaitStarted(final SlowService service, final int iterations) throws InterruptedException {
+        while (service.started.get() < iterations) {
+            Thread.sleep(5);
+        }
+    }
+}
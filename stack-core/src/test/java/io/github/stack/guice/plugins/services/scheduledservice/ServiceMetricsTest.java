@@ -0,0 +1,75 @@
+package io.github.stack.guice.plugins.services.scheduledservice;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ServiceMetricsTest {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testRunHistoryIsCapped() {
+        final ServiceMetrics metrics = new ServiceMetrics(3);
+        for (int i = 1; i <= 5; i++) {
+            metrics.record(i, true, 0, MILLI, 0, null);
+        }
+
+        final List<ServiceRun> runs = metrics.recentRuns();
+        assertEquals(3, runs.size());
+        assertEquals(5, runs.get(0).getStartedAt());
+        assertEquals(4, runs.get(1).getStartedAt());
+        assertEquals(3, runs.get(2).getStartedAt());
+        assertEquals(5, metrics.statistics().getSuccesses());
+    }
+
+    @Test
+    public void testNoRunHistory() {
+        final ServiceMetrics metrics = new ServiceMetrics(0);
+        metrics.record(1, true, 0, MILLI, 0, null);
+
+        assertTrue(metrics.recentRuns().isEmpty());
+        assertEquals(1, metrics.statistics().getSuccesses());
+    }
+
+    @Test
+    public void testFailuresAndDurationsAreRecorded() {
+        final ServiceMetrics metrics = new ServiceMetrics(10);
+        metrics.record(1, true, 3 * MILLI, 2 * MILLI, 10 * MILLI, null);
+        metrics.record(2, true, -MILLI, 4 * MILLI, 10 * MILLI, new IllegalStateException("broken"));
+        metrics.record(3, true, 0, 20 * MILLI, 10 * MILLI, null);
+        metrics.record(4, false, 99 * MILLI, 6 * MILLI, 0, null);
+        metrics.skipped();
+
+        final ServiceStatistics statistics = metrics.statistics();
+        assertEquals(3, statistics.getSuccesses());
+        assertEquals(1, statistics.getFailures());
+        assertEquals(1, statistics.getOverruns());
+        assertEquals(1, statistics.getSkipped());
+        assertEquals(4, statistics.getDurations().getCount());
+        assertEquals(2, statistics.getDurations().getMin(), 0.001);
+        assertEquals(20, statistics.getDurations().getMax(), 0.001);
+        // run-once iterations have no start lag, and early starts count as no lag
+        assertEquals(3, statistics.getStartLags().getCount());
+        assertEquals(0, statistics.getStartLags().getMin(), 0.001);
+        assertEquals(3, statistics.getStartLags().getMax(), 0.001);
+
+        final List<ServiceRun> runs = metrics.recentRuns();
+        final ServiceRun runOnce = runs.get(0);
+        assertFalse(runOnce.isScheduled());
+        assertNull(runOnce.getStartLagMillis());
+        assertEquals(6, runOnce.getDurationMillis(), 0.001);
+        assertTrue(runs.get(1).isOverrun());
+        assertEquals("java.lang.IllegalStateException: broken", runs.get(2).getFailure());
+        assertEquals(0, runs.get(2).getStartLagMillis(), 0.001);
+        assertFalse(runs.get(3).isOverrun());
+        assertNull(runs.get(3).getFailure());
+        assertEquals(3, runs.get(3).getStartLagMillis(), 0.001);
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.stack.server;
+
+import com.google.common.base.Strings;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StaticAssetTest {
+    
+    private final StaticAsset asset = new StaticAsset(
+            Strings.repeat("static asset ", 100).getBytes(StandardCharsets.UTF_8), "text/plain", true);
+    private Server server;
+    
+    @Before
+    public void setUp() throws Exception {
+        server = new Server(0);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(final String target, final Request baseRequest, final HttpServletRequest request,
+                               final HttpServletResponse response) throws IOException {
+                asset.serve(request, response, "no-cache");
+                baseRequest.setHandled(true);
+            }
+        });
+        server.start();
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+    
+    @Test
+    public void testAcceptsGzip() {
+        assertTrue(StaticAsset.acceptsGzip("gzip"));
+        assertTrue(StaticAsset.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(StaticAsset.acceptsGzip("*"));
+        assertTrue(StaticAsset.acceptsGzip("br;q=1.0, gzip ; q=0.8, *;q=0.1"));
+        assertFalse(StaticAsset.acceptsGzip(null));
+        assertFalse(StaticAsset.acceptsGzip("identity, deflate"));
+        assertFalse(StaticAsset.acceptsGzip("gzip;q=0"));
+        assertFalse(StaticAsset.acceptsGzip("gzip;q=0.000, *"));
+        assertFalse(StaticAsset.acceptsGzip("*;q=0"));
+        assertFalse(StaticAsset.acceptsGzip("gzips"));
+    }
+    
+    @Test
+    public void testVariantsHaveDistinctEtags() throws Exception {
+        final HttpURLConnection gzip = get("gzip", null);
+        assertEquals(200, gzip.getResponseCode());
+        assertEquals("gzip", gzip.getHeaderField("Content-Encoding"));
+        final String gzipEtag = gzip.getHeaderField("ETag");
+        
+        final HttpURLConnection identity = get("gzip;q=0", null);
+        assertEquals(200, identity.getResponseCode());
+        assertNull(identity.getHeaderField("Content-Encoding"));
+        final String etag = identity.getHeaderField("ETag");
+        
+        assertEquals(etag.substring(0, etag.length() - 1) + "--gzip\"", gzipEtag);
+    }
+    
+    @Test
+    public void testIfNoneMatch() throws Exception {
+        final String etag = get(null, null).getHeaderField("ETag");
+        final String gzipEtag = get("gzip", null).getHeaderField("ETag");
+        
+        assertEquals(304, get(null, etag).getResponseCode());
+        assertEquals(304, get(null, "\"other\", W/" + etag).getResponseCode());
+        assertEquals(304, get(null, "*").getResponseCode());
+        assertEquals(304, get("gzip", gzipEtag).getResponseCode());
+        assertEquals(200, get(null, gzipEtag).getResponseCode());
+        assertEquals(200, get(null, "\"other\"").getResponseCode());
+    }
+    
+    private HttpURLConnection get(final String acceptEncoding, final String ifNoneMatch) throws IOException {
+        final int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/").openConnection();
+        if (acceptEncoding != null) {
+            connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+        }
+        if (ifNoneMatch != null) {
+            connection.setRequestProperty("If-None-Match", ifNoneMatch);
+        }
+        connection.getResponseCode();
+        return connection;
+    }
+}
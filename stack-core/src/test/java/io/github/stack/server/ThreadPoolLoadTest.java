@@ -0,0 +1,177 @@
+package io.github.stack.server;
+
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives a Jetty server with concurrent requests that block, as a request waiting on I/O would, and
+ * compares the built-in thread pools with the delegating one.
+ */
+public class ThreadPoolLoadTest {
+    
+    private static final int CLIENTS = 64;
+    private static final long BLOCK_MILLIS = 100;
+    
+    @Test
+    public void testExecutorIsNotLimitedByThreadCount() throws Exception {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final long pooled = run(new QueuedThreadPool(12, 12), CLIENTS).elapsedMillis;
+            final long delegated = run(new DelegatingThreadPool(executor), CLIENTS).elapsedMillis;
+            
+            // 10 request threads need at least CLIENTS / 10 rounds of BLOCK_MILLIS
+            assertTrue(pooled >= (CLIENTS / 10) * BLOCK_MILLIS);
+            assertTrue("pooled " + pooled + "ms, delegated " + delegated + "ms", delegated * 2 < pooled);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void testBoundedQueueRejectsOverflowWith503() throws Exception {
+        final Result result = run(new BoundedQueuedThreadPool(6, 6, 60000, 4), CLIENTS);
+        
+        // every client gets an answer: no connection is dropped because Jetty's own jobs were rejected
+        assertEquals(0, result.failed.get());
+        assertTrue(result.rejected.get() > 0);
+        assertTrue(result.succeeded.get() > 0);
+        assertEquals(CLIENTS, result.rejected.get() + result.succeeded.get());
+    }
+    
+    @Test
+    public void testJoinReturnsOnStopWithoutShuttingDownExecutor() throws Exception {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final Server server = start(new DelegatingThreadPool(executor));
+            final CountDownLatch joined = new CountDownLatch(1);
+            final Thread joiner = new Thread(() -> {
+                try {
+                    server.join();
+                    joined.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            joiner.start();
+            
+            assertFalse(joined.await(200, TimeUnit.MILLISECONDS));
+            server.stop();
+            assertTrue(joined.await(5, TimeUnit.SECONDS));
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    private static Result run(final ThreadPool threadPool, final int clients) throws Exception {
+        final Server server = start(threadPool);
+        final ExecutorService clientPool = Executors.newFixedThreadPool(clients);
+        try {
+            final URL url = new URL("http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/");
+            final Result result = new Result();
+            final CountDownLatch ready = new CountDownLatch(1);
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                futures.add(clientPool.submit(() -> {
+                    ready.await();
+                    try {
+                        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                        connection.setRequestProperty("Connection", "close");
+                        connection.setReadTimeout(3000);
+                        final int status = connection.getResponseCode();
+                        if (status == 200) {
+                            try (InputStream in = connection.getInputStream()) {
+                                while (in.read() >= 0) {
+                                    // drain
+                                }
+                            }
+                            result.succeeded.incrementAndGet();
+                        } else if (status == 503) {
+                            result.rejected.incrementAndGet();
+                        } else {
+                            result.failed.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        result.failed.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            final long start = System.nanoTime();
+            ready.countDown();
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+            result.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            return result;
+        } finally {
+            clientPool.shutdownNow();
+            server.stop();
+        }
+    }
+    
+    private static Server start(final ThreadPool threadPool) throws Exception {
+        final Server server = new Server(threadPool);
+        final ServerConnector connector = new ServerConnector(server, 1, 1);
+        connector.setPort(0);
+        connector.setAcceptQueueSize(CLIENTS);
+        server.addConnector(connector);
+        final Handler handler = new AbstractHandler() {
+            @Override
+            public void handle(final String target,
+                               final Request baseRequest,
+                               final HttpServletRequest request,
+                               final HttpServletResponse response) throws IOException {
+                try {
+                    Thread.sleep(BLOCK_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                response.setStatus(200);
+                response.getWriter().write("ok");
+                baseRequest.setHandled(true);
+            }
+        };
+        if (threadPool instanceof BoundedQueuedThreadPool) {
+            final OverloadHandler overloadHandler = new OverloadHandler((BoundedQueuedThreadPool) threadPool);
+            overloadHandler.setHandler(handler);
+            server.setHandler(overloadHandler);
+        } else {
+            server.setHandler(handler);
+        }
+        server.start();
+        return server;
+    }
+    
+    private static class Result {
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicInteger rejected = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private long elapsedMillis;
+    }
+}